@@ -0,0 +1,55 @@
+package com.samarina.benchmark;
+
+import com.samarina.server.CommandLine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор команд: прежний split(" ") + split("=") против CommandLine.
+ * Выделение памяти на команду смотреть в колонке gc.alloc.rate.norm:
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args="CommandParser -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParserBenchmark {
+    @Param({"vote -t=elections -v=mayor", "view -t=elections", "login -u=user42"})
+    public String line;
+
+    private final CommandLine commandLine = new CommandLine();
+
+    @Benchmark
+    public void split(Blackhole bh) {
+        String[] parts = line.split(" ");
+        bh.consume(parts[0]);
+        String topicName = null;
+        String voteName = null;
+        String user = null;
+        for (String part : parts) {
+            if (part.startsWith("-t=") && part.split("=").length == 2) {
+                topicName = part.split("=")[1];
+            } else if (part.startsWith("-v=") && part.split("=").length == 2) {
+                voteName = part.split("=")[1];
+            } else if (part.split("=")[0].equals("-u") && part.split("=").length == 2) {
+                user = part.split("=")[1];
+            }
+        }
+        bh.consume(topicName);
+        bh.consume(voteName);
+        bh.consume(user);
+    }
+
+    @Benchmark
+    public void commandLine(Blackhole bh) {
+        CommandLine command = commandLine.parse(line);
+        bh.consume(command.getCommand());
+        bh.consume(command.getTopic());
+        bh.consume(command.getVote());
+        bh.consume(command.getUser());
+    }
+}
@@ -0,0 +1,54 @@
+package com.samarina.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный путь команды через конвейер сервера (кадрирование, декодирование, ServerHandler, кодирование ответа)
+ * на EmbeddedChannel, без сети. view отображает голосование с ballots голосами,
+ * vote измеряет отказ при повторном голосовании (пользователь голосует один раз при подготовке).
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args="DispatchBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int ballots;
+
+    @Param({"view", "view -t=topic0", "view -t=topic0 -v=vote0", "vote -t=topic0 -v=vote0", "help"})
+    public String command;
+
+    private EmbeddedChannel channel;
+    private byte[] line;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fixtures.fillServer(4, 5, ballots);
+        channel = Fixtures.loggedInChannel("dispatcher");
+        line = (command + "\n").getBytes(CharsetUtil.UTF_8);
+        if (command.startsWith("vote")) {
+            channel.writeInbound(Fixtures.text(command + "\n1\n"));
+            Fixtures.drain(channel);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int dispatch() {
+        ByteBuf in = channel.alloc().buffer(line.length).writeBytes(line);
+        channel.writeInbound(in);
+        return Fixtures.drain(channel);
+    }
+}
@@ -0,0 +1,80 @@
+package com.samarina.benchmark;
+
+import com.samarina.model.Topic;
+import com.samarina.model.UserRegistry;
+import com.samarina.model.Vote;
+import com.samarina.server.ServerApp;
+import com.samarina.server.ServerInitializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//общие данные для бенчмарков
+final class Fixtures {
+    static final String[] OPTIONS = {"option1", "option2", "option3", "option4"};
+
+    private Fixtures() {
+    }
+
+    static int[] registerUsers(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = UserRegistry.register("bench-user" + i);
+        }
+        return ids;
+    }
+
+    static Vote vote(String name, int[] voterIds, int ballots) {
+        Map<String, List<String>> options = new LinkedHashMap<>();
+        for (String option : OPTIONS) {
+            options.put(option, List.of());
+        }
+        Vote vote = new Vote(name, "Описание голосования " + name, options, "creator");
+        for (int i = 0; i < ballots; i++) {
+            vote.vote(i % OPTIONS.length, voterIds[i]);
+        }
+        return vote;
+    }
+
+    //topics разделов по votesPerTopic голосований с ballots голосами в каждом
+    static void fillServer(int topics, int votesPerTopic, int ballots) {
+        ServerApp.getTopics().clear();
+        ServerApp.getActiveUsers().clear();
+        int[] voterIds = registerUsers(ballots);
+        for (int t = 0; t < topics; t++) {
+            Topic topic = new Topic("topic" + t);
+            for (int v = 0; v < votesPerTopic; v++) {
+                topic.addVote(vote("vote" + v, voterIds, ballots));
+            }
+            ServerApp.getTopics().put(topic.getName(), topic);
+        }
+    }
+
+    //соединение с полным серверным конвейером, пользователь уже авторизован
+    static EmbeddedChannel loggedInChannel(String user) {
+        EmbeddedChannel channel = new EmbeddedChannel(new ServerInitializer(8192));
+        channel.writeInbound(text("login -u=" + user + "\n"));
+        drain(channel);
+        return channel;
+    }
+
+    static ByteBuf text(String s) {
+        return Unpooled.copiedBuffer(s, CharsetUtil.UTF_8);
+    }
+
+    //читает и освобождает все исходящие буферы, возвращает число байт
+    static int drain(EmbeddedChannel channel) {
+        int bytes = 0;
+        ByteBuf buf;
+        while ((buf = channel.readOutbound()) != null) {
+            bytes += buf.readableBytes();
+            buf.release();
+        }
+        return bytes;
+    }
+}
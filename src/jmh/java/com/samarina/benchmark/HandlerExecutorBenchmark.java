@@ -0,0 +1,123 @@
+package com.samarina.benchmark;
+
+import com.samarina.server.ServerApp;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Смешанная нагрузка на настоящий сервер через loopback: 7 клиентов запрашивают одно голосование (быстрая команда),
+ * один клиент запрашивает список из topics разделов (медленная команда). Сравниваются режимы voting.handlerExecutor:
+ * eventloop - команды выполняются в двух потоках Netty, и медленная команда задерживает соседние подключения;
+ * virtual - команды выполняются в виртуальных потоках, потоки Netty заняты только вводом-выводом.
+ * Смотреть стоит на перцентили времени быстрой команды.
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args="HandlerExecutorBenchmark"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerExecutorBenchmark {
+    private static final byte[] FAST = "view -t=topic0 -v=vote0\n".getBytes(CharsetUtil.UTF_8);
+    private static final byte[] SLOW = "view\n".getBytes(CharsetUtil.UTF_8);
+    //заголовок, описание, строка "Варианты ответа" и по строке на вариант
+    private static final int FAST_LINES = 3 + Fixtures.OPTIONS.length;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"eventloop", "virtual"})
+        public String handlerExecutor;
+
+        @Param({"20000"})
+        public int topics;
+
+        private EventLoopGroup connectionGroup;
+        private EventLoopGroup dataGroup;
+        private EventExecutorGroup handlerGroup;
+        private int port;
+        private final AtomicInteger users = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void start() throws InterruptedException {
+            Fixtures.fillServer(topics, 1, 10);
+            connectionGroup = new NioEventLoopGroup(1);
+            dataGroup = new NioEventLoopGroup(2);
+            handlerGroup = ServerApp.handlerGroup(handlerExecutor, 256);
+            Channel channel = ServerApp.bootstrap(connectionGroup, dataGroup, handlerGroup)
+                    .bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+            port = ((InetSocketAddress) channel.localAddress()).getPort();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            dataGroup.shutdownGracefully();
+            connectionGroup.shutdownGracefully();
+            if (handlerGroup != null) {
+                handlerGroup.shutdownGracefully();
+            }
+        }
+    }
+
+    //отдельное подключение на каждый поток бенчмарка, пользователь авторизован
+    @State(Scope.Thread)
+    public static class Client {
+        private Socket socket;
+        private OutputStream out;
+        private BufferedReader in;
+        private int slowLines;
+
+        @Setup(Level.Trial)
+        public void connect(Server server) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.port);
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), CharsetUtil.UTF_8));
+            slowLines = server.topics + 1;
+            request(("login -u=executor" + server.users.incrementAndGet() + "\n").getBytes(CharsetUtil.UTF_8), 1);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        //отправляет команду и дочитывает ответ из lines строк, возвращает число символов
+        int request(byte[] line, int lines) throws IOException {
+            out.write(line);
+            out.flush();
+            int chars = 0;
+            for (int i = 0; i < lines; i++) {
+                chars += in.readLine().length();
+            }
+            return chars;
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public int fast(Client client) throws IOException {
+        return client.request(FAST, FAST_LINES);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public int slow(Client client) throws IOException {
+        return client.request(SLOW, client.slowLines);
+    }
+}
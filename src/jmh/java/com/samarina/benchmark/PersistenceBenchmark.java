@@ -0,0 +1,51 @@
+package com.samarina.benchmark;
+
+import com.samarina.server.ServerApp;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сохранение и загрузка данных в JSON и бинарном формате при разном объеме: 10 разделов по 10 голосований, ballots голосов в каждом.
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args="PersistenceBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PersistenceBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int ballots;
+
+    //расширение файла определяет формат снимка
+    @Param({"json", "bin"})
+    public String format;
+
+    private String filename;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filename = "benchmark-" + ballots + "." + format;
+        Fixtures.fillServer(10, 10, ballots);
+        ServerApp.save(filename);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new File("data", filename).delete();
+    }
+
+    @Benchmark
+    public void save() {
+        ServerApp.save(filename);
+    }
+
+    @Benchmark
+    public int load() {
+        ServerApp.load(filename);
+        return ServerApp.getTopics().size();
+    }
+}
@@ -0,0 +1,65 @@
+package com.samarina.benchmark;
+
+import com.samarina.model.Vote;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Голосование и проверка повторного голоса при разном размере голосования.
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args="VoteBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoteBenchmark {
+    private static final int USERS = 2_000_000;
+
+    @Param({"10", "1000", "100000"})
+    public int ballots;
+
+    private int[] voterIds;
+    private Vote filled;
+    private Vote fresh;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        voterIds = Fixtures.registerUsers(USERS);
+        filled = Fixtures.vote("filled", voterIds, ballots);
+    }
+
+    @Setup(Level.Iteration)
+    public void newVote() {
+        fresh = Fixtures.vote("fresh", voterIds, ballots);
+        next = ballots;
+    }
+
+    //новый голос: проверка по индексу + увеличение счетчика
+    @Benchmark
+    public boolean castBallot() {
+        if (next == USERS) {
+            newVote();
+        }
+        return fresh.vote(next % Fixtures.OPTIONS.length, voterIds[next++]);
+    }
+
+    //повторная попытка проголосовать отклоняется
+    @Benchmark
+    public boolean castDuplicate() {
+        return filled.vote(0, voterIds[ballots / 2]);
+    }
+
+    @Benchmark
+    public boolean hasVotedHit() {
+        return filled.hasVoted(voterIds[ballots - 1]);
+    }
+
+    @Benchmark
+    public boolean hasVotedMiss() {
+        return filled.hasVoted(voterIds[USERS - 1]);
+    }
+}
@@ -0,0 +1,87 @@
+package com.samarina.benchmark;
+
+import com.samarina.model.UserRegistry;
+import com.samarina.model.Vote;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Сравнение занимаемой памяти для голосования с большим числом голосов:
+ * старое хранение (списки имен по вариантам + индекс проголосовавших) против Vote со счетчиками.
+ * Имена пользователей создаются и регистрируются в UserRegistry заранее (как при login) и не входят в замер.
+ *
+ * mvn -Pbenchmarks test-compile exec:exec -Dexec.args="-classpath %classpath com.samarina.benchmark.VoteFootprint 1000000"
+ */
+public class VoteFootprint {
+    private static final String[] OPTIONS = {"option1", "option2", "option3", "option4"};
+
+    public static void main(String[] args) {
+        int ballots = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] voters = new String[ballots];
+        int[] voterIds = new int[ballots];
+        for (int i = 0; i < ballots; i++) {
+            voters[i] = "user" + i;
+            voterIds[i] = UserRegistry.register(voters[i]);
+        }
+
+        long before = usedMemory();
+        Object legacy = fillLegacy(voters);
+        long legacyBytes = usedMemory() - before;
+        Reference.reachabilityFence(legacy);
+        legacy = null;
+
+        before = usedMemory();
+        Vote vote = fillVote(voterIds);
+        long voteBytes = usedMemory() - before;
+        Reference.reachabilityFence(vote);
+
+        System.out.printf("Голосов: %d%n", ballots);
+        System.out.printf("Map<String, List<String>> + индекс: %,d байт (%.1f байт на голос)%n", legacyBytes, (double) legacyBytes / ballots);
+        System.out.printf("Vote (счетчики + реестр):           %,d байт (%.1f байт на голос)%n", voteBytes, (double) voteBytes / ballots);
+    }
+
+    private static Object fillLegacy(String[] voters) {
+        Map<String, List<String>> options = new LinkedHashMap<>();
+        Map<String, String> index = new ConcurrentHashMap<>();
+        for (String option : OPTIONS) {
+            options.put(option, new ArrayList<>());
+        }
+        for (int i = 0; i < voters.length; i++) {
+            String option = OPTIONS[i % OPTIONS.length];
+            if (index.putIfAbsent(voters[i], option) == null) {
+                options.get(option).add(voters[i]);
+            }
+        }
+        return new Object[]{options, index};
+    }
+
+    private static Vote fillVote(int[] voterIds) {
+        Map<String, List<String>> options = new LinkedHashMap<>();
+        for (String option : OPTIONS) {
+            options.put(option, List.of());
+        }
+        Vote vote = new Vote("footprint", "desc", options, "creator");
+        for (int i = 0; i < voterIds.length; i++) {
+            vote.vote(i % OPTIONS.length, voterIds[i]);
+        }
+        return vote;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,50 @@
+package com.samarina.benchmark;
+
+import com.samarina.model.Vote;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Масштабирование голосования по потокам: каждый поток голосует в своем голосовании.
+ * При общей блокировке суммарная пропускная способность с ростом числа потоков не растет,
+ * с блокировкой на голосование она должна расти почти пропорционально числу ядер.
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args="VoteScalingBenchmark -t 1"
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args="VoteScalingBenchmark -t max"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoteScalingBenchmark {
+    private static final int USERS = 200_000;
+
+    @State(Scope.Benchmark)
+    public static class Voters {
+        int[] ids;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ids = Fixtures.registerUsers(USERS);
+        }
+    }
+
+    private Vote own;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void newVote() {
+        own = Fixtures.vote("own", new int[0], 0);
+        next = 0;
+    }
+
+    @Benchmark
+    public boolean castOwnVote(Voters voters) {
+        if (next == USERS) {
+            newVote();
+        }
+        return own.vote(next % Fixtures.OPTIONS.length, voters.ids[next++]);
+    }
+}
@@ -0,0 +1,81 @@
+package com.samarina.client;
+
+import com.samarina.server.BinaryProtocol;
+import com.samarina.server.Result;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.concurrent.CompletableFuture;
+
+//бинарный протокол: один кадр ответа на каждый кадр запроса
+class BinaryLoadSession extends LoadSession<ByteBuf> {
+
+    @Override
+    void start(Channel channel) {
+        super.start(channel);
+        // признак протокола пишется мимо LengthFieldPrepender, сразу в начало конвейера
+        channel.pipeline().firstContext().writeAndFlush(Unpooled.wrappedBuffer(new byte[]{BinaryProtocol.MAGIC}));
+    }
+
+    private ByteBuf frame(byte opcode, String... strings) {
+        ByteBuf frame = channel.alloc().buffer();
+        frame.writeByte(opcode);
+        for (String s : strings) {
+            BinaryProtocol.writeString(frame, s);
+        }
+        return frame;
+    }
+
+    private CompletableFuture<Result> send(ByteBuf frame) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        pending.add(future);
+        channel.writeAndFlush(frame);
+        return future;
+    }
+
+    @Override
+    CompletableFuture<Void> login(String user) {
+        return send(frame(BinaryProtocol.LOGIN, user)).thenAccept(result -> {
+            if (result != Result.OK) {
+                throw new IllegalStateException("Ошибка авторизации: " + result);
+            }
+        });
+    }
+
+    @Override
+    CompletableFuture<Void> createTopic(String topic) {
+        return send(frame(BinaryProtocol.CREATE_TOPIC, topic)).thenAccept(result -> { });
+    }
+
+    @Override
+    CompletableFuture<Void> createVote(String topic, String vote, int options) {
+        ByteBuf frame = frame(BinaryProtocol.CREATE_VOTE, topic, vote, "Нагрузочное голосование " + vote);
+        frame.writeByte(options);
+        for (int i = 0; i < options; i++) {
+            BinaryProtocol.writeString(frame, "option" + i);
+        }
+        return send(frame).thenAccept(result -> { });
+    }
+
+    @Override
+    CompletableFuture<Void> view(String topic, String vote, int options) {
+        return send(frame(BinaryProtocol.VIEW, topic, vote)).thenAccept(result -> { });
+    }
+
+    @Override
+    CompletableFuture<Boolean> vote(String topic, String vote, int option, int options) {
+        return send(frame(BinaryProtocol.VOTE, topic, vote).writeShort(option)).thenApply(result -> result == Result.OK);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+        CompletableFuture<Result> future = (CompletableFuture<Result>) pending.poll();
+        if (future != null) {
+            frame.readByte();
+            future.complete(Result.values()[frame.readUnsignedByte()]);
+        }
+    }
+}
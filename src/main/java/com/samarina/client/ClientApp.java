@@ -6,8 +6,10 @@ import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
 import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.codec.string.StringEncoder;
+import io.netty.util.CharsetUtil;
 
 public class ClientApp {
     public static void main(String[] args) {
@@ -20,7 +22,11 @@ public class ClientApp {
                     .handler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) {
-                            ch.pipeline().addLast(new StringDecoder(), new StringEncoder(), new ClientHandler());
+                            ch.pipeline().addLast(
+                                    new LineBasedFrameDecoder(Integer.MAX_VALUE),
+                                    new StringDecoder(CharsetUtil.UTF_8),
+                                    new StringEncoder(CharsetUtil.UTF_8),
+                                    new ClientHandler());
                         }
                     });
 
@@ -31,7 +37,7 @@ public class ClientApp {
             Scanner scanner = new Scanner(System.in);
             while(true){
                 String prompt = scanner.nextLine();
-                channel.writeAndFlush(prompt);
+                channel.writeAndFlush(prompt + "\n");
             }
 
         } catch (InterruptedException e) {
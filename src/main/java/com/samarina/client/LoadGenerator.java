@@ -0,0 +1,204 @@
+package com.samarina.client;
+
+import com.samarina.metrics.LatencyHistogram;
+import com.samarina.server.BinaryProtocol;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Генератор нагрузки: открывает N соединений, авторизует отдельного пользователя на каждом,
+ * создает раздел с голосованиями и в течение заданного времени отправляет смесь команд view/vote.
+ * Каждое соединение ждет ответа перед следующей командой. Голос отдается в голосовании, где пользователь
+ * соединения еще не голосовал; когда таких не осталось, голоса отклоняются сервером как повторные
+ * и учитываются отдельно. В конце печатает пропускную способность и перцентили задержки.
+ *
+ * java -Dload.connections=64 -Dload.duration=30 -Dload.viewRatio=0.8 -cp ... com.samarina.client.LoadGenerator
+ *
+ * load.host, load.port        - адрес сервера (localhost:8080)
+ * load.protocol               - text или binary (text)
+ * load.connections            - число соединений (16)
+ * load.threads                - потоков Netty (0 - по числу ядер)
+ * load.votes, load.options    - голосований в разделе и вариантов в каждом (50, 4)
+ * load.viewRatio              - доля view среди команд (0.9)
+ * load.warmup, load.duration  - прогрев и замер в секундах (5, 30)
+ */
+public class LoadGenerator {
+    private static final String HOST = System.getProperty("load.host", "localhost");
+    private static final int PORT = Integer.getInteger("load.port", 8080);
+    private static final boolean BINARY = "binary".equalsIgnoreCase(System.getProperty("load.protocol", "text"));
+    private static final int CONNECTIONS = Integer.getInteger("load.connections", 16);
+    private static final int THREADS = Integer.getInteger("load.threads", 0);
+    private static final int VOTES = Integer.getInteger("load.votes", 50);
+    private static final int OPTIONS = Integer.getInteger("load.options", 4);
+    private static final double VIEW_RATIO = Double.parseDouble(System.getProperty("load.viewRatio", "0.9"));
+    private static final int WARMUP = Integer.getInteger("load.warmup", 5);
+    private static final int DURATION = Integer.getInteger("load.duration", 30);
+
+    private final LatencyHistogram viewLatency = new LatencyHistogram();
+    private final LatencyHistogram voteLatency = new LatencyHistogram();
+    private final LatencyHistogram rejectedLatency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private volatile boolean measuring;
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator().run();
+    }
+
+    private void run() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(THREADS);
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        String topic = "load-" + runId;
+        List<LoadSession<?>> sessions = new ArrayList<>();
+
+        try {
+            LoadSession<?> admin = connect(group);
+            admin.login("load-admin-" + runId).get(10, TimeUnit.SECONDS);
+            admin.createTopic(topic).get(10, TimeUnit.SECONDS);
+            for (int v = 0; v < VOTES; v++) {
+                admin.createVote(topic, "vote" + v, OPTIONS).get(10, TimeUnit.SECONDS);
+            }
+            admin.close();
+
+            List<CompletableFuture<Void>> logins = new ArrayList<>();
+            for (int i = 0; i < CONNECTIONS; i++) {
+                LoadSession<?> session = connect(group);
+                sessions.add(session);
+                logins.add(session.login("load-" + runId + "-" + i));
+            }
+            CompletableFuture.allOf(logins.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+            System.out.printf("Подключено %d соединений (%s), раздел %s, голосований %d%n",
+                    CONNECTIONS, BINARY ? "binary" : "text", topic, VOTES);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP + DURATION);
+            CountDownLatch finished = new CountDownLatch(CONNECTIONS);
+            for (LoadSession<?> session : sessions) {
+                next(session, topic, deadline, finished);
+            }
+
+            TimeUnit.SECONDS.sleep(WARMUP);
+            viewLatency.reset();
+            voteLatency.reset();
+            rejectedLatency.reset();
+            errors.reset();
+            measuring = true;
+            long start = System.nanoTime();
+            finished.await();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            report(seconds);
+        } finally {
+            for (LoadSession<?> session : sessions) {
+                session.close();
+            }
+            group.shutdownGracefully();
+        }
+    }
+
+    //замкнутый цикл: следующая команда отправляется после ответа на предыдущую
+    private void next(LoadSession<?> session, String topic, long deadline, CountDownLatch finished) {
+        long start = System.nanoTime();
+        if (start >= deadline) {
+            finished.countDown();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean view = random.nextDouble() < VIEW_RATIO;
+        int vote = view ? random.nextInt(VOTES) : unvoted(session, random);
+        CompletableFuture<Boolean> request = view
+                ? session.view(topic, "vote" + vote, OPTIONS).thenApply(ignored -> true)
+                : session.vote(topic, "vote" + vote, random.nextInt(OPTIONS), OPTIONS);
+
+        request.whenComplete((accepted, error) -> {
+            if (error != null) {
+                errors.increment();
+                finished.countDown();
+                return;
+            }
+            if (!view) {
+                session.voted.set(vote);
+            }
+            if (measuring) {
+                (view ? viewLatency : accepted ? voteLatency : rejectedLatency).record(System.nanoTime() - start);
+            }
+            next(session, topic, deadline, finished);
+        });
+    }
+
+    //случайное голосование, в котором пользователь еще не голосовал, или любое, если он проголосовал во всех
+    private static int unvoted(LoadSession<?> session, ThreadLocalRandom random) {
+        int free = VOTES - session.voted.cardinality();
+        if (free <= 0) {
+            return random.nextInt(VOTES);
+        }
+        int vote = session.voted.nextClearBit(0);
+        for (int skip = random.nextInt(free); skip > 0; skip--) {
+            vote = session.voted.nextClearBit(vote + 1);
+        }
+        return vote;
+    }
+
+    private LoadSession<?> connect(EventLoopGroup group) throws InterruptedException {
+        LoadSession<?> session = BINARY ? new BinaryLoadSession() : new TextLoadSession();
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        if (BINARY) {
+                            ch.pipeline().addLast(
+                                    new LengthFieldBasedFrameDecoder(BinaryProtocol.MAX_FRAME_LENGTH, 0, 2, 0, 2),
+                                    new LengthFieldPrepender(2),
+                                    session);
+                        } else {
+                            ch.pipeline().addLast(
+                                    new LineBasedFrameDecoder(Integer.MAX_VALUE),
+                                    new StringDecoder(CharsetUtil.UTF_8),
+                                    new StringEncoder(CharsetUtil.UTF_8),
+                                    session);
+                        }
+                    }
+                });
+        Channel channel = bootstrap.connect(HOST, PORT).sync().channel();
+        session.start(channel);
+        return session;
+    }
+
+    private void report(double seconds) {
+        long operations = viewLatency.count() + voteLatency.count() + rejectedLatency.count();
+        System.out.printf("Выполнено %d команд за %.1f с: %.0f команд/с, ошибок %d%n",
+                operations, seconds, operations / seconds, errors.sum());
+        System.out.println("команда   кол-во      среднее     p50       p90       p99       p99.9     max (мкс)");
+        print("view", viewLatency);
+        print("vote", voteLatency);
+        print("rejected", rejectedLatency);
+    }
+
+    private static void print(String name, LatencyHistogram histogram) {
+        System.out.printf("%-8s %8d %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, histogram.count(),
+                histogram.mean() / 1000.0,
+                histogram.percentile(50) / 1000.0,
+                histogram.percentile(90) / 1000.0,
+                histogram.percentile(99) / 1000.0,
+                histogram.percentile(99.9) / 1000.0,
+                histogram.max() / 1000.0);
+    }
+}
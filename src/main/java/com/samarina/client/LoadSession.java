@@ -0,0 +1,55 @@
+package com.samarina.client;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//соединение генератора нагрузки; ответы сопоставляются запросам по порядку
+abstract class LoadSession<I> extends SimpleChannelInboundHandler<I> {
+    protected final Queue<CompletableFuture<?>> pending = new ConcurrentLinkedQueue<>();
+    protected Channel channel;
+    //голосования, в которых пользователь соединения уже проголосовал; меняется только в цепочке его запросов
+    final BitSet voted = new BitSet();
+
+    abstract CompletableFuture<Void> login(String user);
+
+    abstract CompletableFuture<Void> createTopic(String topic);
+
+    abstract CompletableFuture<Void> createVote(String topic, String vote, int options);
+
+    abstract CompletableFuture<Void> view(String topic, String vote, int options);
+
+    //option - номер варианта с нуля; результат - засчитан ли голос
+    abstract CompletableFuture<Boolean> vote(String topic, String vote, int option, int options);
+
+    void start(Channel channel) {
+        this.channel = channel;
+    }
+
+    void close() {
+        channel.close().syncUninterruptibly();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        CompletableFuture<?> future;
+        while ((future = pending.poll()) != null) {
+            future.completeExceptionally(new IOException("Соединение закрыто"));
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        CompletableFuture<?> future;
+        while ((future = pending.poll()) != null) {
+            future.completeExceptionally(cause);
+        }
+        ctx.close();
+    }
+}
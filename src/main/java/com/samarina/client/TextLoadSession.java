@@ -0,0 +1,91 @@
+package com.samarina.client;
+
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToIntFunction;
+
+/**
+ * Текстовый протокол. Ответ сервера занимает несколько строк без явного конца,
+ * поэтому для каждого запроса число строк ответа определяется по его первой строке.
+ */
+class TextLoadSession extends LoadSession<String> {
+
+    private static class Request extends CompletableFuture<List<String>> {
+        final ToIntFunction<String> expectedLines;
+        final List<String> lines = new ArrayList<>();
+        int needed = -1;
+
+        Request(ToIntFunction<String> expectedLines) {
+            this.expectedLines = expectedLines;
+        }
+    }
+
+    private CompletableFuture<List<String>> send(String lines, ToIntFunction<String> expectedLines) {
+        Request request = new Request(expectedLines);
+        pending.add(request);
+        channel.writeAndFlush(lines);
+        return request;
+    }
+
+    @Override
+    CompletableFuture<Void> login(String user) {
+        return send("login -u=" + user + "\n", first -> 1).thenAccept(lines -> {
+            if (!lines.get(0).startsWith("Вы вошли")) {
+                throw new IllegalStateException(lines.get(0));
+            }
+        });
+    }
+
+    @Override
+    CompletableFuture<Void> createTopic(String topic) {
+        return send("create topic -n=" + topic + "\n", first -> 1).thenAccept(lines -> { });
+    }
+
+    @Override
+    CompletableFuture<Void> createVote(String topic, String vote, int options) {
+        // все шаги диалога создания отправляются одним пакетом: 2 строки приглашения + по строке на каждый шаг
+        StringBuilder dialog = new StringBuilder()
+                .append("create vote -t=").append(topic).append('\n')
+                .append(vote).append('\n')
+                .append("Нагрузочное голосование ").append(vote).append('\n')
+                .append(options).append('\n');
+        for (int i = 0; i < options; i++) {
+            dialog.append("option").append(i).append('\n');
+        }
+        return send(dialog.toString(), first -> 5 + options).thenAccept(lines -> { });
+    }
+
+    @Override
+    CompletableFuture<Void> view(String topic, String vote, int options) {
+        return send("view -t=" + topic + " -v=" + vote + "\n", first -> first.endsWith(":") ? 3 + options : 1)
+                .thenAccept(lines -> { });
+    }
+
+    @Override
+    CompletableFuture<Boolean> vote(String topic, String vote, int option, int options) {
+        return send("vote -t=" + topic + " -v=" + vote + "\n", first -> first.startsWith("Вы перешли") ? 3 + options : 1)
+                .thenCompose(lines -> lines.size() == 1
+                        ? CompletableFuture.completedFuture(lines)
+                        : send((option + 1) + "\n", first -> 1))
+                .thenApply(lines -> lines.get(lines.size() - 1).startsWith("Ваш голос засчитан"));
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, String line) {
+        Request request = (Request) pending.peek();
+        if (request == null) {
+            return;
+        }
+        request.lines.add(line);
+        if (request.needed < 0) {
+            request.needed = request.expectedLines.applyAsInt(line);
+        }
+        if (request.lines.size() >= request.needed) {
+            pending.poll();
+            request.complete(request.lines);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.samarina.model;
+
+import java.util.Arrays;
+
+/**
+ * Замороженный вид голосов одного голосования: первые size записей журнала голосов.
+ * Создается за O(1) без блокировок и не меняется, пока голосование продолжает принимать голоса.
+ * Группировка по вариантам выполняется при первом обращении к count/voter, поэтому
+ * экземпляр не потокобезопасен: он читается тем потоком, который пишет снимок.
+ */
+public final class Ballots {
+    private final int[] users;
+    private final int[] choices;
+    private final int size;
+    private final int optionCount;
+    //voters[offsets[i]..offsets[i + 1]) - номера пользователей, выбравших вариант i
+    private int[] offsets;
+    private int[] voters;
+
+    Ballots(int[] users, int[] choices, int size, int optionCount) {
+        this.users = users;
+        this.choices = choices;
+        this.size = size;
+        this.optionCount = optionCount;
+    }
+
+    public int optionCount() {
+        return optionCount;
+    }
+
+    public int count(int option) {
+        group();
+        return offsets[option + 1] - offsets[option];
+    }
+
+    public int total() {
+        return size;
+    }
+
+    //номер пользователя из UserRegistry
+    public int voter(int option, int index) {
+        group();
+        return voters[offsets[option] + index];
+    }
+
+    private void group() {
+        if (offsets != null) {
+            return;
+        }
+        int[] bounds = new int[optionCount + 1];
+        for (int i = 0; i < size; i++) {
+            bounds[choices[i] + 1]++;
+        }
+        for (int i = 0; i < optionCount; i++) {
+            bounds[i + 1] += bounds[i];
+        }
+        int[] next = Arrays.copyOf(bounds, optionCount);
+        int[] grouped = new int[size];
+        for (int i = 0; i < size; i++) {
+            grouped[next[choices[i]]++] = users[i];
+        }
+        voters = grouped;
+        offsets = bounds;
+    }
+}
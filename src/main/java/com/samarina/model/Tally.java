@@ -0,0 +1,103 @@
+package com.samarina.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//подсчет голосов: счетчики по вариантам хранятся отдельно от реестра проголосовавших
+final class Tally {
+    private final String[] options;
+    private final AtomicLongArray counts;
+    //номер пользователя -> номер выбранного варианта, защищен блокировкой самого Tally
+    private final VoterIndex voters = new VoterIndex(0);
+    //журнал голосов в порядке поступления: записи [0, size) больше не меняются, поэтому их можно читать
+    //без блокировки. При росте массивы копируются, старые копии остаются целыми у тех, кто их читает.
+    //Пишется под блокировкой Tally, size публикуется последним, уже после счетчика варианта:
+    //кто прочитал size, видит и все учтенные им голоса в count(), поэтому size служит номером версии подсчета.
+    private int[] logUsers = new int[4];
+    private int[] logChoices = new int[4];
+    private volatile int size;
+
+    Tally(List<String> options) {
+        this.options = options.toArray(new String[0]);
+        this.counts = new AtomicLongArray(this.options.length);
+    }
+
+    int indexOf(String option) {
+        for (int i = 0; i < options.length; i++) {
+            if (options[i].equals(option)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    boolean cast(int option, int voter) {
+        if (option < 0 || option >= options.length) {
+            return false;
+        }
+        synchronized (this) {
+            if (!voters.putIfAbsent(voter, option)) {
+                return false;
+            }
+            int position = size;
+            if (position == logUsers.length) {
+                logUsers = Arrays.copyOf(logUsers, position * 2);
+                logChoices = Arrays.copyOf(logChoices, position * 2);
+            }
+            logUsers[position] = voter;
+            logChoices[position] = option;
+            counts.incrementAndGet(option);
+            size = position + 1;
+        }
+        return true;
+    }
+
+    //номер выбранного варианта или -1
+    synchronized int choiceOf(int voter) {
+        return voters.get(voter);
+    }
+
+    String optionName(int option) {
+        return options[option];
+    }
+
+    List<String> options() {
+        return List.of(options);
+    }
+
+    int optionCount() {
+        return options.length;
+    }
+
+    long count(int option) {
+        return counts.get(option);
+    }
+
+    long total() {
+        return size;
+    }
+
+    //замороженный вид голосов на текущий момент, без блокировки и без копирования
+    Ballots ballots() {
+        int frozen = size;
+        return new Ballots(logUsers, logChoices, frozen, options.length);
+    }
+
+    //собирает списки проголосовавших по вариантам, нужно только для сохранения данных
+    Map<String, List<String>> voterLists() {
+        Ballots ballots = ballots();
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (int i = 0; i < options.length; i++) {
+            List<String> names = new ArrayList<>(ballots.count(i));
+            for (int j = 0; j < ballots.count(i); j++) {
+                names.add(UserRegistry.nameOf(ballots.voter(i, j)));
+            }
+            result.put(options[i], names);
+        }
+        return result;
+    }
+}
@@ -2,17 +2,32 @@ package com.samarina.model;
 
 import lombok.Getter;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Topic {
     @Getter
     private String name;
+    // голосования раздела читаются и изменяются без общей блокировки
     private Map<String, Vote> votes;
+    //номер версии набора голосований раздела; увеличивается после каждого изменения
+    private final AtomicLong version = new AtomicLong();
+    //то же для всех разделов сразу: растет при создании раздела и при любом изменении набора голосований
+    private static final AtomicLong modifications = new AtomicLong();
 
     public Topic(String name){
         this.name = name;
-        this.votes = new HashMap<>();
+        this.votes = new ConcurrentHashMap<>();
+        modifications.incrementAndGet();
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public static long modifications() {
+        return modifications.get();
     }
 
     public Vote getVote(String voteName) {
@@ -25,9 +40,35 @@ public class Topic {
 
     public void addVote(Vote vote) {
         votes.put(vote.getName(), vote);
+        changed();
+    }
+
+    //добавляет голосование, только если голосования с таким названием еще нет
+    public boolean addVoteIfAbsent(Vote vote) {
+        if (votes.putIfAbsent(vote.getName(), vote) != null) {
+            return false;
+        }
+        changed();
+        return true;
     }
 
     public void deleteVote(String voteName) {
-        votes.remove(voteName);
+        if (votes.remove(voteName) != null) {
+            changed();
+        }
+    }
+
+    //удаляет именно это голосование; false, если под его названием уже другое голосование или ничего нет
+    public boolean deleteVote(Vote vote) {
+        if (!votes.remove(vote.getName(), vote)) {
+            return false;
+        }
+        changed();
+        return true;
+    }
+
+    private void changed() {
+        version.incrementAndGet();
+        modifications.incrementAndGet();
     }
-}
\ No newline at end of file
+}
@@ -3,10 +3,10 @@ package com.samarina.model;
 import lombok.Getter;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+//голоса учитываются под блокировкой самого голосования, а не общей: счетчики вариантов и реестр проголосовавших живут в Tally
 public class Vote {
     @Getter
     private String name;
@@ -14,26 +14,112 @@ public class Vote {
     private String description;
     @Getter
     private String creator;
-    private Map<String, List<String>> options;
+    private final Tally tally;
+    //вызывается после каждого засчитанного голоса; сервер ставит его, пока на голосование есть подписчики (watch)
+    private volatile Runnable listener;
 
     public Vote(String name, String description, Map<String, List<String>> options, String creator) {
         this.name = name;
         this.description = description;
-        this.options = new HashMap<>(options);
         this.creator = creator;
+        this.tally = new Tally(options == null ? List.of() : new ArrayList<>(options.keySet()));
+        if (options != null) {
+            options.forEach((option, voters) -> {
+                int index = tally.indexOf(option);
+                for (String voter : voters) {
+                    tally.cast(index, UserRegistry.register(voter));
+                }
+            });
+        }
+    }
+
+    //голосование без голосов; голоса добавляются через vote(int, int), например при загрузке данных
+    public Vote(String name, String description, List<String> options, String creator) {
+        this.name = name;
+        this.description = description;
+        this.creator = creator;
+        this.tally = new Tally(options);
+    }
+
+    //засчитывает голос, если пользователь еще не голосовал; возвращает false при повторной попытке
+    public boolean vote(String option, String voter) {
+        return cast(tally.indexOf(option), UserRegistry.register(voter));
+    }
+
+    //голос по номеру варианта (с нуля) в порядке optionNames()
+    public boolean vote(int option, String voter) {
+        return cast(option, UserRegistry.register(voter));
+    }
+
+    //голос по номеру пользователя из UserRegistry
+    public boolean vote(int option, int voterId) {
+        return cast(option, voterId);
     }
 
-    public void vote(String option, String voter) {
-        if (options == null) {
-            options = new HashMap<>();
+    private boolean cast(int option, int voterId) {
+        if (!tally.cast(option, voterId)) {
+            return false;
         }
-        options.computeIfAbsent(option, k -> new ArrayList<>()).add(voter);
+        Runnable current = listener;
+        if (current != null) {
+            current.run();
+        }
+        return true;
+    }
+
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    public boolean hasVoted(String voter) {
+        int voterId = UserRegistry.idOf(voter);
+        return voterId >= 0 && hasVoted(voterId);
+    }
+
+    public boolean hasVoted(int voterId) {
+        return tally.choiceOf(voterId) >= 0;
+    }
+
+    //вариант, выбранный пользователем, или null, если он не голосовал
+    public String choiceOf(String voter) {
+        int voterId = UserRegistry.idOf(voter);
+        int option = voterId < 0 ? -1 : tally.choiceOf(voterId);
+        return option < 0 ? null : tally.optionName(option);
+    }
+
+    public List<String> optionNames() {
+        return tally.options();
+    }
+
+    public int optionCount() {
+        return tally.optionCount();
+    }
+
+    public long count(int option) {
+        return tally.count(option);
     }
 
+    public long count(String option) {
+        int index = tally.indexOf(option);
+        return index < 0 ? 0 : tally.count(index);
+    }
+
+    public long totalVotes() {
+        return tally.total();
+    }
+
+    //номер версии голосования: меняется с каждым засчитанным голосом, остальное в голосовании не меняется
+    public long version() {
+        return tally.total();
+    }
+
+    //согласованный снимок проголосовавших; голосующие блокируются только на время копирования массивов
+    public Ballots ballots() {
+        return tally.ballots();
+    }
+
+    //списки проголосовавших по вариантам; собираются заново при каждом вызове, для подсчета используйте count
     public Map<String, List<String>> getOptions(){
-        if(options == null){
-            options = new HashMap<>();
-        }
-        return options;
+        return tally.voterLists();
     }
-}
\ No newline at end of file
+}
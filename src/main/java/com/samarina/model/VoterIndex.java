@@ -0,0 +1,109 @@
+package com.samarina.model;
+
+import java.util.Arrays;
+
+//открытая адресация: номер пользователя -> номер варианта, без упаковки в объекты; не потокобезопасен
+final class VoterIndex {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    VoterIndex(int expected) {
+        int capacity = 16;
+        while (capacity * 3 < expected * 4) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    //-1, если пользователь не голосовал
+    int get(int user) {
+        int mask = keys.length - 1;
+        for (int slot = mix(user) & mask; ; slot = (slot + 1) & mask) {
+            int key = keys[slot];
+            if (key == user) {
+                return values[slot];
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    //добавляет пару, если пользователя еще нет; возвращает false, если он уже есть
+    boolean putIfAbsent(int user, int option) {
+        if ((size + 1) * 4 > keys.length * 3) {
+            rehash(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(user) & mask; ; slot = (slot + 1) & mask) {
+            int key = keys[slot];
+            if (key == user) {
+                return false;
+            }
+            if (key == EMPTY) {
+                keys[slot] = user;
+                values[slot] = option;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    interface Consumer {
+        void accept(int user, int option);
+    }
+
+    void forEach(Consumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    //копирует пары в массивы длиной не меньше size()
+    void copyTo(int[] users, int[] options) {
+        int n = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                users[n] = keys[slot];
+                options[n] = values[slot];
+                n++;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    //номера пользователей идут подряд, перемешиваем биты, чтобы не было длинных цепочек
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
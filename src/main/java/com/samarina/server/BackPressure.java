@@ -0,0 +1,30 @@
+package com.samarina.server;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Перестает читать команды клиента, пока тот не забирает ответы: когда очередь на отправку превышает
+ * верхнюю границу (ServerConfig.WRITE_BUFFER_HIGH), чтение из сокета выключается и включается снова,
+ * когда очередь опускается ниже нижней. Так медленный клиент не раздувает буферы сервера.
+ */
+@ChannelHandler.Sharable
+final class BackPressure extends ChannelInboundHandlerAdapter {
+    private static final Logger log = LoggerFactory.getLogger(BackPressure.class);
+
+    static final BackPressure INSTANCE = new BackPressure();
+
+    private BackPressure() {
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        boolean writable = ctx.channel().isWritable();
+        ctx.channel().config().setAutoRead(writable);
+        log.debug("Чтение {}: {}", writable ? "возобновлено" : "приостановлено", ctx.channel().remoteAddress());
+        ctx.fireChannelWritabilityChanged();
+    }
+}
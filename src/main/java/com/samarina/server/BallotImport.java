@@ -0,0 +1,400 @@
+package com.samarina.server;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.samarina.model.Topic;
+import com.samarina.model.UserRegistry;
+import com.samarina.model.Vote;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Массовая загрузка бюллетеней из CSV (topic,vote,option,user) или NDJSON (по объекту
+ * {"topic", "vote", "option", "user"} в строке; формат - по расширению .csv). Вариант указывается названием
+ * или номером с единицы. Разделы и голосования должны уже существовать.
+ *
+ * Файл читается блоками по ServerConfig.IMPORT_CHUNK_SIZE байт, поэтому может быть больше кучи: в памяти
+ * не больше двух блоков. Блок разбирается по строкам параллельно в ForkJoinPool, пока голоса предыдущего
+ * блока применяются через ServerApp.castVote в порядке файла, с тем же правилом "один пользователь - один голос"
+ * и записью в журнал. После каждого блока импорт ждет записи журнала на диск.
+ */
+public final class BallotImport {
+    private static final Logger log = LoggerFactory.getLogger(BallotImport.class);
+    private static final JsonFactory FACTORY = new JsonFactory();
+    //меньшие куски строк разбираются одной задачей
+    private static final int SPLIT_SIZE = 64 * 1024;
+    //строка, которую не удалось разобрать
+    private static final Ballot INVALID = new Ballot(null, null, null, null);
+
+    private BallotImport() {
+    }
+
+    private static final class Ballot {
+        final String topic;
+        final String vote;
+        final String option;
+        final String user;
+
+        Ballot(String topic, String vote, String option, String user) {
+            this.topic = topic;
+            this.vote = vote;
+            this.option = option;
+            this.user = user;
+        }
+    }
+
+    //итог импорта: rows - строк с данными, остальные поля раскладывают их по результату
+    public static final class Report {
+        private long rows;
+        private long accepted;
+        private long duplicates;
+        private long unknown;
+        private long invalid;
+        private long nanos;
+
+        public long rows() {
+            return rows;
+        }
+
+        public long accepted() {
+            return accepted;
+        }
+
+        //пользователь уже голосовал в этом голосовании
+        public long duplicates() {
+            return duplicates;
+        }
+
+        //нет такого раздела, голосования или варианта
+        public long unknown() {
+            return unknown;
+        }
+
+        public long invalid() {
+            return invalid;
+        }
+
+        public double rowsPerSecond() {
+            return nanos <= 0 ? 0 : rows * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "строк %d: засчитано %d, повторных %d, не найдено %d, с ошибками %d; %d мс, %.0f строк/с",
+                    rows, accepted, duplicates, unknown, invalid, nanos / 1_000_000, rowsPerSecond());
+        }
+    }
+
+    //импорт при остановленном сервере: снимок из папки data, бюллетени поверх него, снимок обратно
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Использование: BallotImport <файл бюллетеней .csv или .ndjson> <снимок в папке data>");
+            return;
+        }
+        ServerApp.load(args[1]);
+        Report report = run(Path.of(args[0]));
+        ServerApp.save(args[1]);
+        System.out.println("Импорт " + args[0] + ": " + report);
+    }
+
+    public static Report run(Path file) throws IOException {
+        return run(file, ServerConfig.IMPORT_CHUNK_SIZE);
+    }
+
+    public static Report run(Path file, int chunkSize) throws IOException {
+        boolean csv = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        Report report = new Report();
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChunkReader reader = new ChunkReader(channel, chunkSize);
+            // следующий блок читается и разбирается, пока применяется предыдущий
+            ForkJoinTask<List<Ballot>> parsing = null;
+            for (ByteBuffer chunk = reader.next(); chunk != null; chunk = reader.next()) {
+                ForkJoinTask<List<Ballot>> next = pool.submit(new ParseTask(csv, chunk.array(), 0, chunk.limit()));
+                if (parsing != null) {
+                    apply(parsing.join(), report);
+                }
+                parsing = next;
+            }
+            if (parsing != null) {
+                apply(parsing.join(), report);
+            }
+        }
+        report.nanos = System.nanoTime() - start;
+        log.info("Импорт бюллетеней из {}: {}", file, report);
+        return report;
+    }
+
+    private static void apply(List<Ballot> ballots, Report report) {
+        //подряд обычно идут бюллетени одного голосования, поэтому его варианты запоминаются
+        Vote lastVote = null;
+        List<String> options = null;
+        for (Ballot ballot : ballots) {
+            report.rows++;
+            if (ballot == INVALID) {
+                report.invalid++;
+                continue;
+            }
+            Topic topic = ServerApp.getTopics().get(ballot.topic);
+            Vote vote = topic == null ? null : topic.getVote(ballot.vote);
+            if (vote == null) {
+                report.unknown++;
+                continue;
+            }
+            if (vote != lastVote) {
+                lastVote = vote;
+                options = vote.optionNames();
+            }
+            int option = optionIndex(options, ballot.option);
+            Result result = option < 0 ? Result.INVALID_OPTION
+                    : ServerApp.castVote(ballot.topic, ballot.vote, option, UserRegistry.register(ballot.user));
+            switch (result) {
+                case OK:
+                    report.accepted++;
+                    break;
+                case ALREADY_VOTED:
+                    report.duplicates++;
+                    break;
+                default:
+                    report.unknown++;
+                    break;
+            }
+        }
+        // журнал не копит в памяти больше одного блока, и применившийся блок уже на диске
+        CompletableFuture<Void> pending = WriteAheadLog.takePending();
+        if (pending != null) {
+            pending.join();
+        }
+    }
+
+    //название варианта или его номер с единицы; -1, если такого нет
+    private static int optionIndex(List<String> options, String option) {
+        int index = options.indexOf(option);
+        if (index >= 0) {
+            return index;
+        }
+        try {
+            int number = Integer.parseInt(option);
+            return number >= 1 && number <= options.size() ? number - 1 : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    //блоки целых строк; хвост незаконченной строки переносится в начало следующего блока
+    private static final class ChunkReader {
+        private final FileChannel channel;
+        private final int chunkSize;
+        private byte[] carry = new byte[0];
+        private boolean eof;
+
+        ChunkReader(FileChannel channel, int chunkSize) {
+            this.channel = channel;
+            this.chunkSize = chunkSize;
+        }
+
+        ByteBuffer next() throws IOException {
+            if (eof && carry.length == 0) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(chunkSize, carry.length + 1));
+            buffer.put(carry);
+            while (buffer.hasRemaining() && !eof) {
+                eof = channel.read(buffer) < 0;
+            }
+            byte[] data = buffer.array();
+            int filled = buffer.position();
+            int end = filled;
+            if (!eof) {
+                end = lastLineEnd(data, filled);
+                if (end == 0) {
+                    throw new IOException("Строка длиннее блока импорта (" + chunkSize + " байт)");
+                }
+            }
+            carry = Arrays.copyOfRange(data, end, filled);
+            if (end == 0) {
+                return null;
+            }
+            return ByteBuffer.wrap(data, 0, end);
+        }
+
+        private static int lastLineEnd(byte[] data, int filled) {
+            for (int i = filled - 1; i >= 0; i--) {
+                if (data[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    //разбирает строки data[from, to); большие куски делятся пополам по границе строки
+    private static final class ParseTask extends RecursiveTask<List<Ballot>> {
+        private final boolean csv;
+        private final byte[] data;
+        private final int from;
+        private final int to;
+
+        ParseTask(boolean csv, byte[] data, int from, int to) {
+            this.csv = csv;
+            this.data = data;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Ballot> compute() {
+            if (to - from > SPLIT_SIZE) {
+                int middle = from + (to - from) / 2;
+                while (middle < to && data[middle - 1] != '\n') {
+                    middle++;
+                }
+                if (middle < to) {
+                    ParseTask left = new ParseTask(csv, data, from, middle);
+                    left.fork();
+                    List<Ballot> right = new ParseTask(csv, data, middle, to).compute();
+                    List<Ballot> ballots = left.join();
+                    ballots.addAll(right);
+                    return ballots;
+                }
+            }
+            List<Ballot> ballots = new ArrayList<>();
+            int lineStart = from;
+            while (lineStart < to) {
+                int lineEnd = lineStart;
+                while (lineEnd < to && data[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                int end = lineEnd > lineStart && data[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                if (end > lineStart) {
+                    String line = new String(data, lineStart, end - lineStart, StandardCharsets.UTF_8);
+                    Ballot ballot = csv ? parseCsv(line) : parseJson(line);
+                    if (ballot != null) {
+                        ballots.add(ballot);
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            return ballots;
+        }
+    }
+
+    //четыре поля через запятую; поле в кавычках может содержать запятые, кавычка внутри удваивается.
+    //null - строка заголовка
+    private static Ballot parseCsv(String line) {
+        String[] fields = new String[4];
+        int count = 0;
+        int pos = 0;
+        while (true) {
+            StringBuilder field = new StringBuilder();
+            if (pos < line.length() && line.charAt(pos) == '"') {
+                pos++;
+                while (true) {
+                    if (pos >= line.length()) {
+                        return INVALID;
+                    }
+                    char c = line.charAt(pos++);
+                    if (c == '"') {
+                        if (pos < line.length() && line.charAt(pos) == '"') {
+                            field.append('"');
+                            pos++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+            } else {
+                while (pos < line.length() && line.charAt(pos) != ',') {
+                    field.append(line.charAt(pos++));
+                }
+            }
+            if (count == fields.length) {
+                return INVALID;
+            }
+            fields[count++] = field.toString().trim();
+            if (pos >= line.length()) {
+                break;
+            }
+            if (line.charAt(pos) != ',') {
+                return INVALID;
+            }
+            pos++;
+        }
+        if (count != fields.length) {
+            return INVALID;
+        }
+        if ("topic".equalsIgnoreCase(fields[0]) && "user".equalsIgnoreCase(fields[3])) {
+            return null;
+        }
+        return ballot(fields[0], fields[1], fields[2], fields[3]);
+    }
+
+    private static Ballot parseJson(String line) {
+        String topic = null;
+        String vote = null;
+        String option = null;
+        String user = null;
+        try (JsonParser parser = FACTORY.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return INVALID;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case "topic":
+                        topic = parser.getValueAsString();
+                        break;
+                    case "vote":
+                        vote = parser.getValueAsString();
+                        break;
+                    case "option":
+                        option = parser.getValueAsString();
+                        break;
+                    case "user":
+                        user = parser.getValueAsString();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            return INVALID;
+        }
+        return ballot(topic, vote, option, user);
+    }
+
+    private static Ballot ballot(String topic, String vote, String option, String user) {
+        if (isEmpty(topic) || isEmpty(vote) || isEmpty(option) || isEmpty(user)) {
+            return INVALID;
+        }
+        return new Ballot(topic, vote, option, user);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+}
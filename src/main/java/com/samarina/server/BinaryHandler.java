@@ -0,0 +1,141 @@
+package com.samarina.server;
+
+import com.samarina.model.Topic;
+import com.samarina.model.UserRegistry;
+import com.samarina.model.Vote;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//обработчик бинарного протокола, бизнес-логика та же, что и у текстовых команд (ServerApp)
+public class BinaryHandler extends SimpleChannelInboundHandler<ByteBuf> {
+    private static final Logger log = LoggerFactory.getLogger(BinaryHandler.class);
+
+    private String name;
+    private int userId = -1;
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+        byte opcode = frame.readByte();
+        ByteBuf response = ctx.alloc().buffer();
+        response.writeByte(opcode);
+        int statusIndex = response.writerIndex();
+        response.writeByte(0);
+
+        Result result;
+        try {
+            result = execute(opcode, frame, response);
+        } catch (IndexOutOfBoundsException e) {
+            log.warn("Некорректный бинарный кадр {} от {}", opcode, ctx.channel().remoteAddress());
+            response.writerIndex(statusIndex + 1);
+            result = Result.BAD_REQUEST;
+        }
+        //LengthFieldPrepender(2) не закодирует кадр длиннее MAX_FRAME_LENGTH: вместо данных - только статус
+        if (response.readableBytes() > BinaryProtocol.MAX_FRAME_LENGTH) {
+            log.warn("Ответ на команду {} не помещается в кадр: {} байт", opcode, response.readableBytes());
+            response.writerIndex(statusIndex + 1);
+            result = Result.TOO_LARGE;
+        }
+        response.setByte(statusIndex, result.ordinal());
+        ctx.writeAndFlush(response);
+    }
+
+    private Result execute(byte opcode, ByteBuf in, ByteBuf out) {
+        if (opcode == BinaryProtocol.LOGIN) {
+            return login(BinaryProtocol.readString(in));
+        }
+        if (userId < 0) {
+            return Result.NOT_LOGGED_IN;
+        }
+        switch (opcode) {
+            case BinaryProtocol.CREATE_TOPIC:
+                String topicName = BinaryProtocol.readString(in);
+                return topicName.isEmpty() ? Result.BAD_REQUEST : ServerApp.createTopic(topicName);
+            case BinaryProtocol.CREATE_VOTE:
+                return createVote(in);
+            case BinaryProtocol.VOTE:
+                return ServerApp.castVote(BinaryProtocol.readString(in), BinaryProtocol.readString(in), in.readUnsignedShort(), userId);
+            case BinaryProtocol.VIEW:
+                return view(BinaryProtocol.readString(in), BinaryProtocol.readString(in), out);
+            case BinaryProtocol.DELETE:
+                return ServerApp.deleteVote(BinaryProtocol.readString(in), BinaryProtocol.readString(in), name);
+            default:
+                return Result.BAD_REQUEST;
+        }
+    }
+
+    private Result login(String username) {
+        if (userId >= 0 || username.isEmpty()) {
+            return Result.BAD_REQUEST;
+        }
+        if (!ServerApp.loginUser(username)) {
+            return Result.ALREADY_EXISTS;
+        }
+        userId = UserRegistry.idOf(username);
+        name = UserRegistry.nameOf(userId);
+        log.info("Пользователь {} подключен по бинарному протоколу", name);
+        return Result.OK;
+    }
+
+    private Result createVote(ByteBuf in) {
+        String topicName = BinaryProtocol.readString(in);
+        String voteName = BinaryProtocol.readString(in);
+        String description = BinaryProtocol.readString(in);
+        int count = in.readUnsignedByte();
+        if (count == 0 || topicName.isEmpty() || voteName.isEmpty()) {
+            return Result.BAD_REQUEST;
+        }
+        Map<String, List<String>> options = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            //клиент ссылается на варианты по номеру, поэтому повторы не схлопываются молча
+            String option = BinaryProtocol.readString(in);
+            if (option.isEmpty() || options.put(option, List.of()) != null) {
+                return Result.BAD_REQUEST;
+            }
+        }
+        return ServerApp.createVote(topicName, new Vote(voteName, description, options, name));
+    }
+
+    private Result view(String topicName, String voteName, ByteBuf out) {
+        Topic topic = ServerApp.getTopics().get(topicName);
+        if (topic == null) {
+            return Result.TOPIC_NOT_FOUND;
+        }
+        Vote vote = topic.getVote(voteName);
+        if (vote == null) {
+            return Result.VOTE_NOT_FOUND;
+        }
+        List<String> options = vote.optionNames();
+        //число вариантов передается в u16
+        if (options.size() > 0xFFFF) {
+            return Result.TOO_LARGE;
+        }
+        out.writeShort(options.size());
+        for (int i = 0; i < options.size(); i++) {
+            BinaryProtocol.writeString(out, options.get(i));
+            out.writeLong(vote.count(i));
+        }
+        return Result.OK;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (name != null) {
+            ServerApp.logoutUser(name);
+            log.info("Клиент {} (пользователь {}) отключен", ctx.channel().remoteAddress(), name);
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.error("Ошибка бинарного протокола у пользователя {}: {}", name, cause.getMessage(), cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,48 @@
+package com.samarina.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Компактный бинарный протокол для автоматических клиентов (киосков голосования).
+ * Клиент начинает соединение байтом MAGIC, после чего обмен идет кадрами:
+ * [u16 длина][u8 код команды][данные команды].
+ * Ответ: [u16 длина][u8 код команды][u8 Result.ordinal()][данные ответа].
+ * Строки передаются как [u16 длина][UTF-8].
+ * Ответ, который не помещается в кадр (VIEW с большим числом вариантов), приходит без данных со статусом TOO_LARGE.
+ *
+ * LOGIN        user
+ * CREATE_TOPIC topic
+ * CREATE_VOTE  topic vote description [u8 n] n*option
+ * VOTE         topic vote [u16 номер варианта с нуля]
+ * VIEW         topic vote  -> [u16 n] n*(option [i64 голосов])
+ * DELETE       topic vote
+ */
+public final class BinaryProtocol {
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final int MAX_FRAME_LENGTH = 0xFFFF;
+
+    public static final byte LOGIN = 1;
+    public static final byte CREATE_TOPIC = 2;
+    public static final byte CREATE_VOTE = 3;
+    public static final byte VOTE = 4;
+    public static final byte VIEW = 5;
+    public static final byte DELETE = 6;
+
+    private BinaryProtocol() {
+    }
+
+    public static String readString(ByteBuf in) {
+        int length = in.readUnsignedShort();
+        String value = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        in.skipBytes(length);
+        return value;
+    }
+
+    public static void writeString(ByteBuf out, CharSequence value) {
+        int lengthIndex = out.writerIndex();
+        out.writeShort(0);
+        int length = out.writeCharSequence(value, CharsetUtil.UTF_8);
+        out.setShort(lengthIndex, length);
+    }
+}
@@ -0,0 +1,306 @@
+package com.samarina.server;
+
+import com.samarina.model.Topic;
+import com.samarina.model.UserRegistry;
+import com.samarina.model.Vote;
+import io.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Компактный бинарный снимок (файлы *.bin). Все имена хранятся один раз в таблице строк,
+ * дальше на них ссылаются номера, голоса - массивы номеров пользователей.
+ *
+ * [i32 MAGIC][i32 VERSION]
+ * [i32 n] n*([i32 длина][UTF-8])                                   таблица строк
+ * [i32 разделов] разделы: [i32 имя][i32 голосований] голосования:
+ *     [i32 имя][i32 описание][i32 создатель][i32 n] n*[i32 вариант] n*([i32 голосов] голоса*[i32 пользователь])
+ *
+ * Числа - big-endian, отсутствующая строка (описание null) - номер -1.
+ * Пишется через FileChannel, читается через MappedByteBuffer окнами до WINDOW байт.
+ */
+final class BinarySnapshot {
+    private static final int MAGIC = 0x564F5445; //VOTE
+    private static final int VERSION = 1;
+    private static final int WINDOW = 256 << 20;
+
+    private BinarySnapshot() {
+    }
+
+    //первый проход собирает таблицу строк, второй пишет файл
+    static void write(StateView state, Path file) throws IOException {
+        StringTable strings = new StringTable();
+        for (StateView.TopicView topic : state.topics) {
+            strings.index(topic.name);
+            for (StateView.VoteView vote : topic.votes) {
+                strings.index(vote.name);
+                strings.index(vote.description);
+                strings.index(vote.creator);
+                vote.options.forEach(strings::index);
+                for (int option = 0; option < vote.options.size(); option++) {
+                    for (int i = 0; i < vote.ballots.count(option); i++) {
+                        strings.user(vote.ballots.voter(option, i));
+                    }
+                }
+            }
+        }
+
+        Path temp = SnapshotFiles.createTemp(file);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Output out = new Output(channel);
+                out.putInt(MAGIC);
+                out.putInt(VERSION);
+                strings.write(out);
+                out.putInt(state.topics.size());
+                for (StateView.TopicView topic : state.topics) {
+                    out.putInt(strings.index(topic.name));
+                    out.putInt(topic.votes.size());
+                    for (StateView.VoteView vote : topic.votes) {
+                        writeVote(out, strings, vote);
+                    }
+                }
+                out.flush();
+                channel.force(true);
+            }
+            SnapshotFiles.replace(temp, file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private static void writeVote(Output out, StringTable strings, StateView.VoteView vote) throws IOException {
+        out.putInt(strings.index(vote.name));
+        out.putInt(strings.index(vote.description));
+        out.putInt(strings.index(vote.creator));
+        out.putInt(vote.options.size());
+        for (String option : vote.options) {
+            out.putInt(strings.index(option));
+        }
+        for (int option = 0; option < vote.options.size(); option++) {
+            int count = vote.ballots.count(option);
+            out.putInt(count);
+            for (int i = 0; i < count; i++) {
+                out.putInt(strings.user(vote.ballots.voter(option, i)));
+            }
+        }
+    }
+
+    static Map<String, Topic> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Файл " + file.getFileName() + " не является бинарным снимком");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия бинарного снимка: " + version);
+            }
+
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.getString();
+            }
+            //номер строки -> номер пользователя в UserRegistry, регистрируется при первой встрече
+            int[] users = new int[strings.length];
+            Arrays.fill(users, -1);
+
+            Map<String, Topic> topics = new ConcurrentHashMap<>();
+            int[] voters = new int[0];
+            int topicCount = in.getInt();
+            for (int t = 0; t < topicCount; t++) {
+                Topic topic = new Topic(string(strings, in.getInt()));
+                int voteCount = in.getInt();
+                for (int v = 0; v < voteCount; v++) {
+                    String name = string(strings, in.getInt());
+                    String description = string(strings, in.getInt());
+                    String creator = string(strings, in.getInt());
+                    int optionCount = in.getInt();
+                    List<String> options = new ArrayList<>(optionCount);
+                    for (int option = 0; option < optionCount; option++) {
+                        options.add(string(strings, in.getInt()));
+                    }
+
+                    Vote vote = new Vote(name, description, options, creator);
+                    for (int option = 0; option < optionCount; option++) {
+                        int count = in.getInt();
+                        if (voters.length < count) {
+                            voters = new int[count];
+                        }
+                        in.getInts(voters, count);
+                        for (int i = 0; i < count; i++) {
+                            int user = voters[i];
+                            if (users[user] < 0) {
+                                users[user] = UserRegistry.register(strings[user]);
+                            }
+                            vote.vote(option, users[user]);
+                        }
+                    }
+                    topic.addVote(vote);
+                }
+                topics.put(topic.getName(), topic);
+            }
+            return topics;
+        }
+    }
+
+    private static String string(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+        //номер пользователя в UserRegistry -> номер строки
+        private int[] users = new int[0];
+
+        int index(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = encoded.size();
+                indexes.put(value, index);
+                encoded.add(value.getBytes(CharsetUtil.UTF_8));
+            }
+            return index;
+        }
+
+        int user(int userId) {
+            if (userId >= users.length) {
+                int length = users.length;
+                users = Arrays.copyOf(users, Math.max(userId + 1, length * 2));
+                Arrays.fill(users, length, users.length, -1);
+            }
+            if (users[userId] < 0) {
+                users[userId] = index(UserRegistry.nameOf(userId));
+            }
+            return users[userId];
+        }
+
+        void write(Output out) throws IOException {
+            out.putInt(encoded.size());
+            for (byte[] bytes : encoded) {
+                out.putInt(bytes.length);
+                out.putBytes(bytes);
+            }
+        }
+    }
+
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            if (buffer.remaining() < bytes.length) {
+                flush();
+            }
+            if (bytes.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+            } else {
+                buffer.put(bytes);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    //отображает файл в память окнами, чтобы читать и снимки больше 2 ГБ
+    private static final class Input {
+        private final FileChannel channel;
+        private final long size;
+        private long base;
+        private MappedByteBuffer buffer;
+
+        Input(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        int getInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                require(1);
+                int chunk = Math.min(length - read, buffer.remaining());
+                buffer.get(bytes, read, chunk);
+                read += chunk;
+            }
+            return new String(bytes, CharsetUtil.UTF_8);
+        }
+
+        //массив чисел копируется из отображения целиком, без разбора по одному
+        void getInts(int[] target, int count) throws IOException {
+            int read = 0;
+            while (read < count) {
+                require(Integer.BYTES);
+                int chunk = Math.min(count - read, buffer.remaining() / Integer.BYTES);
+                IntBuffer ints = buffer.asIntBuffer();
+                ints.get(target, read, chunk);
+                buffer.position(buffer.position() + chunk * Integer.BYTES);
+                read += chunk;
+            }
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                long position = base + buffer.position();
+                if (size - position < bytes) {
+                    throw new IOException("Бинарный снимок оборван");
+                }
+                map(position);
+            }
+        }
+
+        private void map(long position) throws IOException {
+            base = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.samarina.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR-событие на текстовую команду, записывается только для команд дольше порога (по умолчанию 20 мс).
+ * Включается без перезапуска: jcmd <pid> JFR.start, порог меняется настройкой threshold.
+ */
+@Name("com.samarina.voting.Command")
+@Label("Command")
+@Category("Voting")
+@Description("Text command executed by ServerHandler")
+@Threshold("20 ms")
+@StackTrace(false)
+final class CommandEvent extends jdk.jfr.Event {
+    //команда меню (login, view, ...) или шаг диалога (WAITING_FOR_NAME, ...)
+    @Label("Command")
+    String command;
+
+    @Label("Topic")
+    String topic;
+
+    @Label("Vote")
+    String vote;
+
+    @Label("User")
+    String user;
+
+    @Label("Response Size")
+    @DataAmount
+    long responseBytes;
+}
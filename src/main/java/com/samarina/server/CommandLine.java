@@ -0,0 +1,148 @@
+package com.samarina.server;
+
+import lombok.Getter;
+
+/**
+ * Разбор текстовой команды без split и промежуточных массивов.
+ * Один экземпляр на соединение, переиспользуется для каждой строки.
+ * Пустое значение параметра (-u=) сохраняется как пустая строка, отсутствующий параметр - как null.
+ * Значение с пробелами берется в кавычки: -d="текст описания".
+ */
+public final class CommandLine {
+    public enum Command {
+        LOGIN, CREATE, VIEW, VOTE, DELETE, HELP, EXIT, SAVE, LOAD, STATS, WATCH, UNWATCH, IMPORT, UNKNOWN
+    }
+
+    private static final Command[] COMMANDS = Command.values();
+    private static final String[] WORDS = {"login", "create", "view", "vote", "delete", "help", "exit", "save", "load", "stats", "watch", "unwatch", "import"};
+
+    @Getter
+    private Command command;
+    //второе слово команды: topic/vote у create, имя файла у save/load/import
+    @Getter
+    private String target;
+    @Getter
+    private String topic; //-t
+    @Getter
+    private String vote; //-v
+    @Getter
+    private String user; //-u
+    @Getter
+    private String name; //-n
+    @Getter
+    private String description; //-d
+    //-o: варианты через запятую у create vote, номер варианта у vote
+    @Getter
+    private String options;
+
+    public CommandLine parse(CharSequence line) {
+        command = Command.UNKNOWN;
+        target = null;
+        topic = null;
+        vote = null;
+        user = null;
+        name = null;
+        description = null;
+        options = null;
+
+        int length = line.length();
+        int start = skipSpaces(line, 0);
+        int end = tokenEnd(line, start);
+        command = lookup(line, start, end);
+
+        for (start = skipSpaces(line, end); start < length; start = skipSpaces(line, end)) {
+            end = quoted(line, start) ? closingQuote(line, start + 4) : tokenEnd(line, start);
+            if (line.charAt(start) == '-' && end - start >= 2) {
+                option(line, start, end);
+            } else if (target == null) {
+                target = line.subSequence(start, end).toString();
+            }
+        }
+        return this;
+    }
+
+    //параметр вида -x=значение; -x без значения считается пустым значением
+    private void option(CharSequence line, int start, int end) {
+        String value;
+        if (quoted(line, start)) {
+            //закрывающей кавычки может не быть, тогда значение - до конца строки
+            int valueEnd = end > start + 4 && line.charAt(end - 1) == '"' ? end - 1 : end;
+            value = line.subSequence(start + 4, valueEnd).toString();
+        } else {
+            value = end - start > 3 && line.charAt(start + 2) == '='
+                    ? line.subSequence(start + 3, end).toString()
+                    : "";
+        }
+        switch (line.charAt(start + 1)) {
+            case 't':
+                topic = value;
+                break;
+            case 'v':
+                vote = value;
+                break;
+            case 'u':
+                user = value;
+                break;
+            case 'n':
+                name = value;
+                break;
+            case 'd':
+                description = value;
+                break;
+            case 'o':
+                options = value;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Command lookup(CharSequence line, int start, int end) {
+        for (int i = 0; i < WORDS.length; i++) {
+            if (regionEquals(line, start, end, WORDS[i])) {
+                return COMMANDS[i];
+            }
+        }
+        return Command.UNKNOWN;
+    }
+
+    private static boolean regionEquals(CharSequence line, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (line.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(CharSequence line, int pos) {
+        while (pos < line.length() && line.charAt(pos) == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    //-x="...
+    private static boolean quoted(CharSequence line, int start) {
+        return start + 3 < line.length() && line.charAt(start) == '-'
+                && line.charAt(start + 2) == '=' && line.charAt(start + 3) == '"';
+    }
+
+    //позиция после закрывающей кавычки или конец строки
+    private static int closingQuote(CharSequence line, int pos) {
+        while (pos < line.length() && line.charAt(pos) != '"') {
+            pos++;
+        }
+        return Math.min(pos + 1, line.length());
+    }
+
+    private static int tokenEnd(CharSequence line, int pos) {
+        while (pos < line.length() && line.charAt(pos) != ' ') {
+            pos++;
+        }
+        return pos;
+    }
+}
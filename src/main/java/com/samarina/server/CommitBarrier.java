@@ -0,0 +1,120 @@
+package com.samarina.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Придерживает ответы клиенту, пока изменение, сделанное при обработке команды, не записано в журнал на диск.
+ * Ответы одного соединения уходят в исходном порядке: пока есть задержанный ответ, следующие встают за ним.
+ */
+class CommitBarrier extends ChannelOutboundHandlerAdapter {
+    private static final Logger log = LoggerFactory.getLogger(CommitBarrier.class);
+
+    private static final class PendingWrite {
+        final Object message;
+        final ChannelPromise promise;
+        final long queued = System.nanoTime();
+
+        PendingWrite(Object message, ChannelPromise promise) {
+            this.message = message;
+            this.promise = promise;
+        }
+    }
+
+    private final Queue<PendingWrite> pending = new ArrayDeque<>();
+    private CompletableFuture<Void> barrier;
+    private boolean flushPending;
+    //JFR-событие ожидания, начинается с первого задержанного ответа
+    private CommitWaitEvent waitEvent;
+    //размер ответов в байтах; считается, только пока ServerHandler записывает JFR-событие команды
+    private boolean counting;
+    private long counted;
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (counting) {
+            counted += msg instanceof ByteBuf ? ((ByteBuf) msg).readableBytes()
+                    : msg instanceof CharSequence ? ByteBufUtil.utf8Bytes((CharSequence) msg) : 0;
+        }
+        CompletableFuture<Void> commit = WriteAheadLog.takePending();
+        if (commit == null && pending.isEmpty()) {
+            ctx.write(msg, promise);
+            return;
+        }
+        if (pending.isEmpty()) {
+            waitEvent = new CommitWaitEvent();
+            waitEvent.begin();
+        }
+        pending.add(new PendingWrite(msg, promise));
+        if (commit != null) {
+            // пакеты журнала фиксируются по порядку, достаточно ждать последний
+            barrier = commit;
+            commit.whenComplete((ignored, error) -> ctx.executor().execute(() -> release(ctx, commit, error)));
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (!pending.isEmpty()) {
+            flushPending = true;
+        }
+        ctx.flush();
+    }
+
+    private void release(ChannelHandlerContext ctx, CompletableFuture<Void> commit, Throwable error) {
+        if (commit != barrier) {
+            return;
+        }
+        barrier = null;
+        CommitWaitEvent event = waitEvent;
+        waitEvent = null;
+        if (error != null) {
+            log.error("Изменение не записано в журнал, соединение {} закрывается", ctx.channel().remoteAddress());
+            for (PendingWrite write = pending.poll(); write != null; write = pending.poll()) {
+                ReferenceCountUtil.release(write.message);
+                write.promise.tryFailure(error);
+            }
+            ctx.close();
+            return;
+        }
+        long now = System.nanoTime();
+        event.replies = pending.size();
+        event.commit();
+        for (PendingWrite write = pending.poll(); write != null; write = pending.poll()) {
+            ServerMetrics.INSTANCE.commitWait(now - write.queued);
+            ctx.write(write.message, write.promise);
+        }
+        if (flushPending) {
+            flushPending = false;
+            ctx.flush();
+        }
+    }
+
+    void startCounting() {
+        counting = true;
+        counted = 0;
+    }
+
+    long stopCounting() {
+        counting = false;
+        return counted;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        for (PendingWrite write = pending.poll(); write != null; write = pending.poll()) {
+            ReferenceCountUtil.release(write.message);
+            write.promise.tryFailure(new IllegalStateException("Соединение закрыто"));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.samarina.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+//JFR-событие: ответ клиенту ждал в CommitBarrier, пока изменение запишется в журнал на диск
+@Name("com.samarina.voting.CommitWait")
+@Label("Commit Wait")
+@Category("Voting")
+@Description("Reply held until the write-ahead log was forced to disk")
+@Threshold("10 ms")
+@StackTrace(false)
+final class CommitWaitEvent extends jdk.jfr.Event {
+    @Label("Held Replies")
+    int replies;
+}
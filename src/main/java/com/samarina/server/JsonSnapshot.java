@@ -0,0 +1,211 @@
+package com.samarina.server;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.samarina.model.Ballots;
+import com.samarina.model.Topic;
+import com.samarina.model.UserRegistry;
+import com.samarina.model.Vote;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Потоковое сохранение и загрузка данных в JSON без промежуточного дерева объектов.
+ * Формат совпадает с прежним: {"topics": [{"name", "allVotes": {имя: {name, description, creator, options}}}]}.
+ */
+final class JsonSnapshot {
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private JsonSnapshot() {
+    }
+
+    static void write(StateView state, Path file) throws IOException {
+        Path temp = SnapshotFiles.createTemp(file);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                JsonGenerator generator = FACTORY.createGenerator(Channels.newOutputStream(channel), JsonEncoding.UTF8);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.useDefaultPrettyPrinter();
+                writeTopics(generator, state);
+                generator.close();
+                channel.force(true);
+            }
+            SnapshotFiles.replace(temp, file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private static void writeTopics(JsonGenerator generator, StateView state) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("topics");
+        for (StateView.TopicView topic : state.topics) {
+            generator.writeStartObject();
+            generator.writeStringField("name", topic.name);
+            generator.writeObjectFieldStart("allVotes");
+            for (StateView.VoteView vote : topic.votes) {
+                generator.writeFieldName(vote.name);
+                writeVote(generator, vote);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeVote(JsonGenerator generator, StateView.VoteView vote) throws IOException {
+        Ballots ballots = vote.ballots;
+
+        generator.writeStartObject();
+        generator.writeStringField("name", vote.name);
+        generator.writeStringField("description", vote.description);
+        generator.writeStringField("creator", vote.creator);
+        generator.writeObjectFieldStart("options");
+        for (int i = 0; i < vote.options.size(); i++) {
+            generator.writeArrayFieldStart(vote.options.get(i));
+            for (int j = 0; j < ballots.count(i); j++) {
+                generator.writeString(UserRegistry.nameOf(ballots.voter(i, j)));
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    //строит разделы и голосования сразу из потока токенов; неизвестные поля пропускаются
+    static Map<String, Topic> read(Path file) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(file.toFile())) {
+            Map<String, Topic> topics = new ConcurrentHashMap<>();
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("topics".equals(field)) {
+                    expect(parser, value, JsonToken.START_ARRAY);
+                    VoteReader reader = new VoteReader();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        Topic topic = readTopic(parser, reader);
+                        topics.put(topic.getName(), topic);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return topics;
+        }
+    }
+
+    private static Topic readTopic(JsonParser parser, VoteReader reader) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        String name = null;
+        List<Vote> votes = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("name".equals(field)) {
+                name = parser.getValueAsString();
+            } else if ("allVotes".equals(field)) {
+                expect(parser, value, JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String voteName = parser.getCurrentName();
+                    parser.nextToken();
+                    votes.add(reader.read(parser, voteName));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (name == null) {
+            throw new JsonParseException(parser, "У раздела нет названия");
+        }
+        Topic topic = new Topic(name);
+        votes.forEach(topic::addVote);
+        return topic;
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Ожидалось " + expected + ", получено " + actual);
+        }
+    }
+
+    //название голосования берется из ключа allVotes, как и раньше;
+    //голоса одного голосования копятся в переиспользуемых массивах номеров, пока не известны все варианты
+    private static final class VoteReader {
+        private final List<String> options = new ArrayList<>();
+        private int[] choices = new int[64];
+        private int[] voters = new int[64];
+        private int size;
+
+        Vote read(JsonParser parser, String key) throws IOException {
+            expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+            options.clear();
+            size = 0;
+            String description = null;
+            String creator = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "description":
+                        description = parser.getValueAsString();
+                        break;
+                    case "creator":
+                        creator = parser.getValueAsString();
+                        break;
+                    case "options":
+                        expect(parser, value, JsonToken.START_OBJECT);
+                        readOptions(parser);
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+
+            Vote vote = new Vote(key, description, List.copyOf(options), creator);
+            for (int i = 0; i < size; i++) {
+                vote.vote(choices[i], voters[i]);
+            }
+            return vote;
+        }
+
+        private void readOptions(JsonParser parser) throws IOException {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                int option = options.size();
+                options.add(parser.getCurrentName());
+                expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+                while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                    add(option, UserRegistry.register(parser.getText()));
+                }
+                expect(parser, parser.currentToken(), JsonToken.END_ARRAY);
+            }
+        }
+
+        private void add(int option, int voter) {
+            if (size == voters.length) {
+                choices = Arrays.copyOf(choices, size * 2);
+                voters = Arrays.copyOf(voters, size * 2);
+            }
+            choices[size] = option;
+            voters[size] = voter;
+            size++;
+        }
+    }
+}
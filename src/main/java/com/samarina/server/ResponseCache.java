@@ -0,0 +1,87 @@
+package com.samarina.server;
+
+import com.samarina.model.Topic;
+import com.samarina.model.Vote;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Готовые ответы на view и help, уже закодированные в UTF-8. Ответ строится заново, только если изменился
+ * номер версии того, что он показывает: Topic.modifications() для списка разделов, Topic.version() для
+ * голосований раздела, Vote.version() для голосования. Номер версии читается до построения ответа,
+ * а изменения увеличивают его после себя, поэтому устаревший ответ не переживет следующего запроса.
+ *
+ * Буферы лежат в куче и не освобождаются (unreleasableBuffer): их одновременно пишут несколько подключений,
+ * каждое через свой duplicate(), а вытесненный ответ просто собирает сборщик мусора.
+ */
+final class ResponseCache {
+    //записей о разделах и голосованиях; при переполнении кэш очищается целиком
+    private static final int MAX_ENTRIES = 10_000;
+
+    private static final class Entry {
+        final Object owner;
+        final long version;
+        final int size;
+        final ByteBuf response;
+
+        Entry(Object owner, long version, int size, ByteBuf response) {
+            this.owner = owner;
+            this.version = version;
+            this.size = size;
+            this.response = response;
+        }
+
+        boolean matches(Object owner, long version, int size) {
+            return this.owner == owner && this.version == version && this.size == size;
+        }
+    }
+
+    private static volatile Entry topicList;
+    //ключ - сам раздел или голосование (равенство по ссылке): после load или удаления старые записи
+    //больше не запрашиваются и уходят при очередной очистке
+    private static final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+
+    private ResponseCache() {
+    }
+
+    static ByteBuf encode(String response) {
+        return Unpooled.unreleasableBuffer(Unpooled.copiedBuffer(response, CharsetUtil.UTF_8).asReadOnly());
+    }
+
+    //разделы не удаляются по одному, поэтому вместе с модификациями достаточно следить за самой картой и ее размером
+    static ByteBuf topicList(Map<String, Topic> all, Supplier<String> render) {
+        int size = all.size();
+        long version = Topic.modifications();
+        Entry entry = topicList;
+        if (entry == null || !entry.matches(all, version, size)) {
+            entry = new Entry(all, version, size, encode(render.get()));
+            topicList = entry;
+        }
+        return entry.response.duplicate();
+    }
+
+    static ByteBuf topic(Topic topic, Supplier<String> render) {
+        return lookup(topic, topic.version(), render);
+    }
+
+    static ByteBuf vote(Vote vote, Supplier<String> render) {
+        return lookup(vote, vote.version(), render);
+    }
+
+    private static ByteBuf lookup(Object owner, long version, Supplier<String> render) {
+        Entry entry = entries.get(owner);
+        if (entry == null || !entry.matches(owner, version, 0)) {
+            if (entries.size() >= MAX_ENTRIES) {
+                entries.clear();
+            }
+            entry = new Entry(owner, version, 0, encode(render.get()));
+            entries.put(owner, entry);
+        }
+        return entry.response.duplicate();
+    }
+}
@@ -0,0 +1,15 @@
+package com.samarina.server;
+
+//результат операции над разделами и голосованиями, общий для текстового и бинарного протоколов
+public enum Result {
+    OK,
+    TOPIC_NOT_FOUND, //раздел не найден
+    VOTE_NOT_FOUND, //голосование не найдено
+    ALREADY_EXISTS, //раздел или голосование с таким именем уже есть
+    ALREADY_VOTED, //пользователь уже голосовал
+    INVALID_OPTION, //нет варианта ответа с таким номером
+    ACCESS_DENIED, //удалить голосование может только создатель
+    NOT_LOGGED_IN, //команда требует авторизации
+    BAD_REQUEST, //некорректные параметры команды
+    TOO_LARGE //ответ не помещается в кадр бинарного протокола
+}
@@ -1,154 +1,418 @@
 package com.samarina.server;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-
 import java.util.*;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.samarina.model.Topic;
+import com.samarina.model.UserRegistry;
 import com.samarina.model.Vote;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
 
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-
 public class ServerApp {
     private static final Logger log = LoggerFactory.getLogger(ServerApp.class);
-    private static final int PORT = 8080;
+    //разделы и пользователи доступны всем потокам Netty без общей блокировки;
+    //load подменяет карту разделов целиком, поэтому каждая операция читает ссылку один раз
+    @Getter
+    private static volatile Map<String, Topic> topics = new ConcurrentHashMap<>();
     @Getter
-    private static final Map<String, Topic> topics = new HashMap<>();
+    private static final Set<String> activeUsers = ConcurrentHashMap.newKeySet();
+
+    //снимок, который сервер пишет сам по расписанию и в который сворачивается журнал изменений
+    private static final String CHECKPOINT = "checkpoint.bin";
+    //журнал изменений; null, пока сервер не восстановил состояние, и в тестах
+    @Getter
+    private static volatile WriteAheadLog wal;
+    private static final Object checkpointLock = new Object();
+    //блокирующие операции (запись и чтение файлов) выполняются здесь, а не в потоках Netty;
+    //виртуальные потоки дешевы, поэтому отдельный поток на каждую операцию
     @Getter
-    private static final Set<String> activeUsers = new HashSet<>();
+    private static final ExecutorService blockingExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("blocking-", 0).factory());
+
+    //повторяет записи журнала; повторное применение уже учтенной записи ничего не меняет
+    private static final WriteAheadLog.Replay REPLAY = new WriteAheadLog.Replay() {
+        @Override
+        public void topicCreated(String topic) {
+            topics.putIfAbsent(topic, new Topic(topic));
+        }
+
+        @Override
+        public void voteCreated(String topic, String vote, String description, String creator, List<String> options) {
+            Topic target = topics.get(topic);
+            if (target != null) {
+                target.addVoteIfAbsent(new Vote(vote, description, options, creator));
+            }
+        }
+
+        @Override
+        public void ballotCast(String topic, String vote, int option, String user) {
+            Topic target = topics.get(topic);
+            Vote ballot = target == null ? null : target.getVote(vote);
+            if (ballot != null) {
+                ballot.vote(option, UserRegistry.register(user));
+            }
+        }
+
+        @Override
+        public void voteDeleted(String topic, String vote) {
+            Topic target = topics.get(topic);
+            if (target != null) {
+                target.deleteVote(vote);
+            }
+        }
+    };
 
     public static void main(String[] args) {
+        recover();
+        ServerMetrics.register();
+
+        boolean epoll = Transport.useEpoll(ServerConfig.TRANSPORT);
         //обработка подключений
-        EventLoopGroup connectionGroup = new NioEventLoopGroup();
+        EventLoopGroup connectionGroup = Transport.group(epoll, ServerConfig.ACCEPTOR_THREADS, "accept");
 
         // обработка входящих данных
-        EventLoopGroup dataGroup = new NioEventLoopGroup();
+        EventLoopGroup dataGroup = Transport.group(epoll, ServerConfig.IO_THREADS, "io");
+
+        // выполнение команд; null - в потоках dataGroup
+        EventExecutorGroup handlerGroup = handlerGroup(ServerConfig.HANDLER_EXECUTOR, ServerConfig.HANDLER_THREADS);
 
         try {
-            ServerBootstrap bootstrap = new ServerBootstrap();
-            bootstrap.group(connectionGroup, dataGroup)
-                    .channel(NioServerSocketChannel.class)
-                    .childHandler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        protected void initChannel(SocketChannel ch){
-                            ch.pipeline().addLast(
-                                    new StringDecoder(),
-                                    new StringEncoder(),
-                                    new ServerHandler());
-                            log.info("Новое подключение: {}", ch.remoteAddress());
-                        }
-                    })
-                    .option(ChannelOption.SO_BACKLOG, 128)
-                    .childOption(ChannelOption.SO_KEEPALIVE, true);
-
-            ChannelFuture future = bootstrap.bind(PORT).sync();
-            log.info("Сервер запущен на порту {}", PORT);
-            System.out.println("Сервер запущен на порту " +  PORT);
-            future.channel().closeFuture().sync();
+            ServerBootstrap bootstrap = bootstrap(connectionGroup, dataGroup, handlerGroup);
+            //с SO_REUSEPORT каждый поток приема слушает свой сокет на том же порту
+            int listeners = epoll && ServerConfig.REUSE_PORT ? Math.max(ServerConfig.ACCEPTOR_THREADS, 1) : 1;
+            List<Channel> channels = new ArrayList<>();
+            for (int i = 0; i < listeners; i++) {
+                channels.add(bootstrap.bind(ServerConfig.HOST, ServerConfig.PORT).sync().channel());
+            }
+            log.info("Сервер запущен на порту {}, транспорт: {}, сокетов: {}, команды выполняются: {}",
+                    ServerConfig.PORT, epoll ? "epoll" : "nio", listeners, ServerConfig.HANDLER_EXECUTOR);
+            System.out.println("Сервер запущен на порту " +  ServerConfig.PORT);
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
         } catch (InterruptedException e) {
             log.error("Сервер был прерван: {}", e.getMessage(), e);
             throw new RuntimeException("Соединение разорвано");
         } finally {
             dataGroup.shutdownGracefully();
             connectionGroup.shutdownGracefully();
+            if (handlerGroup != null) {
+                handlerGroup.shutdownGracefully();
+            }
             log.info("Сервер остановлен");
         }
     }
 
-    public static synchronized boolean loginUser(String username) {
-        if (activeUsers.contains(username)) {
+    //тип канала определяется группами: epoll или NIO
+    public static ServerBootstrap bootstrap(EventLoopGroup connectionGroup, EventLoopGroup dataGroup, EventExecutorGroup handlerGroup) {
+        ByteBufAllocator allocator = new PooledByteBufAllocator(ServerConfig.DIRECT_BUFFERS);
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(connectionGroup, dataGroup)
+                .channel(Transport.serverChannel(connectionGroup))
+                .childHandler(new ServerInitializer(ServerConfig.MAX_LINE_LENGTH, handlerGroup))
+                .option(ChannelOption.SO_BACKLOG, ServerConfig.BACKLOG)
+                .option(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.TCP_NODELAY, ServerConfig.TCP_NODELAY)
+                .childOption(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(ServerConfig.WRITE_BUFFER_LOW, ServerConfig.WRITE_BUFFER_HIGH));
+        if (Transport.isEpoll(connectionGroup) && ServerConfig.REUSE_PORT) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        return bootstrap;
+    }
+
+    //eventloop - команды выполняются в потоках Netty (группа не нужна), virtual - в виртуальных потоках:
+    //каждый исполнитель группы - однопоточный, поэтому команды одного подключения идут по порядку
+    public static EventExecutorGroup handlerGroup(String mode, int threads) {
+        switch (mode) {
+            case "eventloop":
+                return null;
+            case "virtual":
+                return new DefaultEventExecutorGroup(threads, Thread.ofVirtual().name("handler-", 0).factory());
+            default:
+                throw new IllegalArgumentException("Неизвестный режим выполнения команд: " + mode);
+        }
+    }
+
+    public static boolean loginUser(String username) {
+        // в списке активных хранится общий экземпляр имени из реестра пользователей
+        if (!activeUsers.add(UserRegistry.nameOf(UserRegistry.register(username)))) {
             return false;
         }
-        activeUsers.add(username);
         log.info("Активных пользователей: {}", activeUsers.size());
         return true;
     }
 
-    public static synchronized void logoutUser(String username) {
-        log.info("Активных пользователей: {}", activeUsers.size());
+    public static void logoutUser(String username) {
         activeUsers.remove(username);
+        log.info("Активных пользователей: {}", activeUsers.size());
     }
 
-    public static void exit() {
-        log.info("Завершение работы сервера");
-        System.exit(0);
-    }
+    //загружает последний снимок, применяет журнал поверх него и начинает новый сегмент журнала
+    private static void recover() {
+        try {
+            // в отличие от load, испорченный снимок останавливает запуск: иначе журнал применился бы к пустым
+            // данным, а следующий checkpoint записал бы их поверх снимка и удалил сегменты журнала
+            if (new File("data", CHECKPOINT).exists()) {
+                topics = readSnapshot("recover", CHECKPOINT);
+            }
+            if (ServerConfig.WAL_ENABLED) {
+                Path directory = Path.of(ServerConfig.WAL_DIRECTORY);
+                WriteAheadLog.replay(directory, REPLAY);
+                wal = WriteAheadLog.open(directory);
+            }
+            log.info("Состояние восстановлено: разделов {}", topics.size());
+        } catch (IOException e) {
+            log.error("Не удалось восстановить состояние из журнала: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка журнала изменений", e);
+        }
 
-    public static synchronized void save(String filename){
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        if (ServerConfig.CHECKPOINT_INTERVAL > 0) {
+            ScheduledExecutorService checkpoints = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checkpoints.scheduleWithFixedDelay(ServerApp::checkpoint,
+                    ServerConfig.CHECKPOINT_INTERVAL, ServerConfig.CHECKPOINT_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
 
-        try{
-            File dataDirectory = new File("data");
-            if (!dataDirectory.exists()){
-                dataDirectory.mkdir();
-                log.info("Создана папка data");
+    //сохраняет состояние в снимок в фоне, не останавливая обработчики: сначала за один быстрый проход
+    //снимается замороженный вид (StateView), затем он пишется на диск, пока голоса продолжают поступать.
+    //Если включен журнал, новые изменения заранее переключаются в следующий сегмент,
+    //а предыдущие сегменты после записи снимка больше не нужны
+    public static void checkpoint() {
+        synchronized (checkpointLock) {
+            try {
+                WriteAheadLog current = wal;
+                long start = System.nanoTime();
+                long keep = current == null ? 0 : current.rotate();
+                StateView state = StateView.capture(topics.values());
+                long captured = System.nanoTime();
+                long size = writeSnapshot("checkpoint", CHECKPOINT, state);
+                if (current != null) {
+                    current.deleteBefore(keep);
+                }
+                log.info("Снимок {}: разделов {}, голосов {}, размер {} КБ, захват {} мс, запись {} мс",
+                        CHECKPOINT, state.topics.size(), state.ballots(), size / 1024,
+                        (captured - start) / 1_000_000, (System.nanoTime() - captured) / 1_000_000);
+            } catch (IOException e) {
+                log.error("Не удалось сохранить снимок {}: {}", CHECKPOINT, e.getMessage(), e);
             }
-            File file = new File(dataDirectory, filename);
-
-            Map<String, Object> data = new HashMap<>();
-            data.put("topics", getTopics().values());
+        }
+    }
 
-            mapper.writeValue(file, data);
-            log.info("Данные сохранены в файл {}", filename);
-        }catch (IOException e){
-            log.error("При попытке сохранения данных произошла ошибка: {}", e.getMessage(), e);
+    //изменения пишутся в журнал после применения; ответ клиенту придерживает CommitBarrier до fsync.
+    //Применение и запись в журнал идут под одной блокировкой, чтобы порядок в журнале совпадал с порядком
+    //применения: создание и удаление голосований - под блокировкой раздела, голос и создание или удаление
+    //голосования - под блокировкой самого голосования (Vote). Порядок захвата: раздел, затем голосование.
+    //Новый раздел или голосование публикуется уже заблокированным, поэтому изменения внутри него
+    //не попадут в журнал раньше записи о его создании
+    public static Result createTopic(String topicName) {
+        Topic topic = new Topic(topicName);
+        synchronized (topic) {
+            if (topics.putIfAbsent(topicName, topic) != null) {
+                return Result.ALREADY_EXISTS;
+            }
+            WriteAheadLog journal = wal;
+            if (journal != null) {
+                journal.topicCreated(topicName);
+            }
         }
+        return Result.OK;
     }
 
-    public static synchronized void load(String filename){
-        ObjectMapper mapper = new ObjectMapper();
+    public static Result createVote(String topicName, Vote vote) {
+        Topic topic = topics.get(topicName);
+        if (topic == null) {
+            return Result.TOPIC_NOT_FOUND;
+        }
+        synchronized (topic) {
+            synchronized (vote) {
+                if (!topic.addVoteIfAbsent(vote)) {
+                    return Result.ALREADY_EXISTS;
+                }
+                WriteAheadLog journal = wal;
+                if (journal != null) {
+                    journal.voteCreated(topicName, vote);
+                }
+            }
+        }
+        return Result.OK;
+    }
 
-        try{
-            File dataDir = new File("data");
-            if (!dataDir.exists()) {
-                log.error("Папка data не найдена");
-                throw new RuntimeException("Папка data не найдена");
+    //option - номер варианта с нуля, userId - номер пользователя из UserRegistry
+    public static Result castVote(String topicName, String voteName, int option, int userId) {
+        Topic topic = topics.get(topicName);
+        if (topic == null) {
+            return Result.TOPIC_NOT_FOUND;
+        }
+        Vote vote = topic.getVote(voteName);
+        if (vote == null) {
+            return Result.VOTE_NOT_FOUND;
+        }
+        if (option < 0 || option >= vote.optionCount()) {
+            return Result.INVALID_OPTION;
+        }
+        synchronized (vote) {
+            // голосование могли удалить (и создать заново под тем же названием) или заменить через load
+            // после поиска: голос в удаленное голосование не записывается в журнал нового
+            if (topics.get(topicName) != topic || topic.getVote(voteName) != vote) {
+                return Result.VOTE_NOT_FOUND;
+            }
+            if (!vote.vote(option, userId)) {
+                return Result.ALREADY_VOTED;
             }
+            WriteAheadLog journal = wal;
+            if (journal != null) {
+                journal.ballotCast(topicName, voteName, option, UserRegistry.nameOf(userId));
+            }
+        }
+        return Result.OK;
+    }
 
-            File file = new File(dataDir, filename);
-            if(!file.exists()){
-                log.error("Файл {} не найден", filename);
-                throw new RuntimeException("Файл " + filename + " не найден");
+    public static Result deleteVote(String topicName, String voteName, String username) {
+        Topic topic = topics.get(topicName);
+        if (topic == null) {
+            return Result.TOPIC_NOT_FOUND;
+        }
+        Vote vote = topic.getVote(voteName);
+        if (vote == null) {
+            return Result.VOTE_NOT_FOUND;
+        }
+        if (!vote.getCreator().equals(username)) {
+            return Result.ACCESS_DENIED;
+        }
+        synchronized (topic) {
+            synchronized (vote) {
+                // голосование могли удалить и пересоздать после проверки автора: удаляется только проверенное
+                if (!topic.deleteVote(vote)) {
+                    return Result.VOTE_NOT_FOUND;
+                }
+                VoteWatchers.voteDeleted(vote);
+                WriteAheadLog journal = wal;
+                if (journal != null) {
+                    journal.voteDeleted(topicName, voteName);
+                }
             }
+        }
+        return Result.OK;
+    }
+
+    public static void exit() {
+        log.info("Завершение работы сервера");
+        System.exit(0);
+    }
 
-            Map<String, Object> data = mapper.readValue(file, new TypeReference<Map<String, Object>>() {});
-            topics.clear();
+    //запись идет потоком из замороженного вида состояния, голосующие не блокируются
+    public static void save(String filename){
+        try{
+            long start = System.nanoTime();
+            writeSnapshot("save", filename, StateView.capture(topics.values()));
+            log.info("Данные сохранены в файл {} за {} мс", filename, (System.nanoTime() - start) / 1_000_000);
+        }catch (IOException e){
+            log.error("При попытке сохранения данных произошла ошибка: {}", e.getMessage(), e);
+        }
+    }
 
-            List<Map<String, Object>> topicsData = (List<Map<String, Object>>) data.get("topics");
-            for(Map<String, Object> topicData : topicsData){
-                String topicName = (String) topicData.get("name");
-                Topic topic = new Topic(topicName);
-                topics.put(topicName, topic);
+    //возвращает размер записанного файла; operation - для JFR-события SnapshotEvent
+    private static long writeSnapshot(String operation, String filename, StateView state) throws IOException {
+        SnapshotEvent event = new SnapshotEvent();
+        event.begin();
+        File dataDirectory = new File("data");
+        if (!dataDirectory.exists()){
+            dataDirectory.mkdir();
+            log.info("Создана папка data");
+        }
+        Path file = new File(dataDirectory, filename).toPath();
+        if (isBinary(filename)) {
+            BinarySnapshot.write(state, file);
+        } else {
+            JsonSnapshot.write(state, file);
+        }
+        long size = Files.size(file);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.file = filename;
+            event.size = size;
+            event.topics = state.topics.size();
+            event.commit();
+        }
+        return size;
+    }
 
-                Map<String, Object> votesData = (Map<String, Object>) topicData.get("allVotes");
-                for(Map.Entry<String, Object> voteEntry : votesData.entrySet()){
-                    String voteName = voteEntry.getKey();
-                    Map<String, Object> voteData = (Map<String, Object>) voteEntry.getValue();
-                    String description = (String) voteData.get("description");
-                    Map<String, List<String>> options = (Map<String, List<String>>) voteData.get("options");
-                    String creator = (String) voteData.get("creator");
+    //формат снимка выбирается по расширению: .bin - бинарный, остальные - JSON
+    public static boolean isBinary(String filename) {
+        return filename.endsWith(".bin");
+    }
 
-                    Vote vote = new Vote(voteName, description, options, creator);
-                    topic.addVote(vote);
-                }
+    //новые данные собираются в отдельной карте и подменяют текущие одной записью ссылки
+    public static void load(String filename){
+        try{
+            topics = readSnapshot("load", filename);
+            VoteWatchers.topicsReplaced();
+            // журнал описывает изменения старого состояния, поэтому сразу сворачиваем его в снимок нового,
+            // какой бы файл ни загрузили, в том числе сам checkpoint.bin (при запуске снимок читает recover)
+            if (wal != null) {
+                checkpoint();
             }
         }catch (IOException e){
             log.error("При попытке загрузки данных произошла ошибка: {}",e.getMessage(), e);
         }
     }
+
+    //читает снимок из папки data; operation - для JFR-события SnapshotEvent
+    private static Map<String, Topic> readSnapshot(String operation, String filename) throws IOException {
+        File dataDir = new File("data");
+        if (!dataDir.exists()) {
+            log.error("Папка data не найдена");
+            throw new RuntimeException("Папка data не найдена");
+        }
+
+        File file = new File(dataDir, filename);
+        if(!file.exists()){
+            log.error("Файл {} не найден", filename);
+            throw new RuntimeException("Файл " + filename + " не найден");
+        }
+
+        long start = System.nanoTime();
+        SnapshotEvent event = new SnapshotEvent();
+        event.begin();
+        Map<String, Topic> loaded = isBinary(filename)
+                ? BinarySnapshot.read(file.toPath())
+                : JsonSnapshot.read(file.toPath());
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.file = filename;
+            event.size = file.length();
+            event.topics = loaded.size();
+            event.commit();
+        }
+        log.info("Данные загружены из файла {} за {} мс, разделов: {}",
+                filename, (System.nanoTime() - start) / 1_000_000, loaded.size());
+        return loaded;
+    }
 }
@@ -0,0 +1,47 @@
+package com.samarina.server;
+
+//настройки сервера, задаются системными свойствами: java -Dvoting.port=9090 ...
+public final class ServerConfig {
+    public static final int PORT = Integer.getInteger("voting.port", 8080);
+    //адрес, на котором сервер принимает подключения; по умолчанию - все интерфейсы
+    public static final String HOST = System.getProperty("voting.host", "0.0.0.0");
+    //максимальная длина одной команды в байтах, более длинные строки отбрасываются
+    public static final int MAX_LINE_LENGTH = Integer.getInteger("voting.maxLineLength", 8192);
+
+    //журнал изменений: каждое изменение пишется на диск до ответа клиенту
+    public static final boolean WAL_ENABLED = Boolean.parseBoolean(System.getProperty("voting.wal", "true"));
+    public static final String WAL_DIRECTORY = System.getProperty("voting.walDir", "data/wal");
+    //как часто состояние сохраняется в снимок data/checkpoint.bin (и сворачивается журнал), в секундах; 0 - не сохранять
+    public static final int CHECKPOINT_INTERVAL = Integer.getInteger("voting.checkpointInterval", 300);
+
+    //где выполняются обработчики команд: eventloop - в потоках Netty, virtual - в виртуальных потоках,
+    //чтобы медленная команда не задерживала чтение и запись остальных подключений того же потока
+    public static final String HANDLER_EXECUTOR = System.getProperty("voting.handlerExecutor", "eventloop");
+    //число исполнителей в режиме virtual; каждое подключение закреплено за одним из них, порядок команд сохраняется
+    public static final int HANDLER_THREADS = Integer.getInteger("voting.handlerThreads", 256);
+
+    //сетевой транспорт: auto - нативный epoll, если доступен, иначе NIO; epoll; nio
+    public static final String TRANSPORT = System.getProperty("voting.transport", "auto");
+    //потоки приема подключений и потоки ввода-вывода; 0 - по умолчанию Netty (два на ядро)
+    public static final int ACCEPTOR_THREADS = Integer.getInteger("voting.acceptorThreads", 1);
+    public static final int IO_THREADS = Integer.getInteger("voting.ioThreads", 0);
+    public static final int BACKLOG = Integer.getInteger("voting.backlog", 1024);
+    //только для epoll: порт открывается acceptorThreads раз, и ядро распределяет подключения между ними
+    public static final boolean REUSE_PORT = Boolean.parseBoolean(System.getProperty("voting.reusePort", "false"));
+    public static final boolean TCP_NODELAY = Boolean.parseBoolean(System.getProperty("voting.tcpNoDelay", "true"));
+    //буферы из пула; direct - вне кучи, без лишнего копирования при записи в сокет
+    public static final boolean DIRECT_BUFFERS = Boolean.parseBoolean(System.getProperty("voting.directBuffers", "true"));
+    //подключение перестает быть доступным для записи, когда в очереди на отправку больше high байт,
+    //и снова становится доступным, когда очередь опускается ниже low
+    public static final int WRITE_BUFFER_LOW = Integer.getInteger("voting.writeBufferLow", 32 * 1024);
+    public static final int WRITE_BUFFER_HIGH = Integer.getInteger("voting.writeBufferHigh", 64 * 1024);
+
+    //подписчики watch получают не больше одного обновления голосования за этот интервал, в миллисекундах
+    public static final int WATCH_INTERVAL = Integer.getInteger("voting.watchInterval", 1000);
+
+    //импорт бюллетеней читает файл блоками такого размера, в байтах; строка файла должна помещаться в блок
+    public static final int IMPORT_CHUNK_SIZE = Integer.getInteger("voting.importChunkSize", 4 * 1024 * 1024);
+
+    private ServerConfig() {
+    }
+}
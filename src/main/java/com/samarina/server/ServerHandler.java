@@ -1,21 +1,45 @@
 package com.samarina.server;
 
 import com.samarina.model.Topic;
+import com.samarina.model.UserRegistry;
 import com.samarina.model.Vote;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.*;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Обработчик текстовых команд. Один экземпляр на все подключения: состояние клиента (CurrentContext)
+ * хранится в атрибуте канала SESSION и удаляется при отключении, выходе или ошибке.
+ */
+@ChannelHandler.Sharable
 public class ServerHandler extends SimpleChannelInboundHandler<String> {
     private static final Logger log = LoggerFactory.getLogger(ServerHandler.class);
 
+    private static final AttributeKey<CurrentContext> SESSION = AttributeKey.valueOf(ServerHandler.class, "session");
+
+    //экземпляр, который ставится во все конвейеры
+    static final ServerHandler INSTANCE = new ServerHandler();
+
     //класс для хранения состояния для каждого клиента
     private static class CurrentContext {
         private String name;
+        int userId = -1;
         State state = State.MENU;
         boolean isLogin = false;
         String currentTopic;
@@ -24,94 +48,97 @@ public class ServerHandler extends SimpleChannelInboundHandler<String> {
         int numOfOptions;
         Map<String, List<String>> voteOptions = new HashMap<>();
         List<String> currentOptions = new ArrayList<>();
+        final CommandLine commandLine = new CommandLine();
+        //пока идет сохранение или загрузка, следующие команды клиента ждут в очереди, чтобы ответы не перемешались
+        boolean busy;
+        final Queue<String> deferred = new ArrayDeque<>();
+
+        //все переходы между состояниями идут здесь, чтобы ServerMetrics знал, сколько сессий в каком состоянии
+        void moveTo(State next) {
+            ServerMetrics.INSTANCE.sessionMoved(state, next);
+            state = next;
+        }
     }
 
-    //хранение состояний клиентов
-    private final Map<ChannelHandlerContext, CurrentContext> currentClientCtx = new HashMap<>();
-
     private void handleCommand(ChannelHandlerContext ctx, String msg, CurrentContext context){
-        String[] splitMessage = msg.split(" ");
-        String command = splitMessage[0];
+        CommandLine command = context.commandLine.parse(msg);
 
-        switch (command){
-            case "login":
+        switch (command.getCommand()){
+            case LOGIN:
                 if(context.isLogin){
                     log.warn("Повторная авторизация. Пользователь {}", context.name);
                     ctx.writeAndFlush("Вы уже авторизованы\n");
                     return;
                 }
-                handleLogin(ctx, splitMessage, context);
+                handleLogin(ctx, command, context);
                 break;
-            case "create":
+            case CREATE:
                 if(context.isLogin) {
-                    handleCreate(ctx, splitMessage, context);
+                    handleCreate(ctx, command, context);
                 }else{
                     log.warn("Попытка выполнения команды create неавторизованным пользователем");
-                    ctx.writeAndFlush("Для выполнения команды create необходимо авторизоваться\n Для авторизации выполните команду login");
+                    ctx.writeAndFlush("Для выполнения команды create необходимо авторизоваться\n Для авторизации выполните команду login\n");
                 }
                 break;
-            case "view":
+            case VIEW:
                 if(context.isLogin) {
-                    handleView(ctx, splitMessage);
+                    handleView(ctx, command);
                 }else{
                     log.warn("Попытка выполнения команды view неавторизованным пользователем");
-                    ctx.writeAndFlush("Для выполнения команды view необходимо авторизоваться\n Для авторизации выполните команду login");
+                    ctx.writeAndFlush("Для выполнения команды view необходимо авторизоваться\n Для авторизации выполните команду login\n");
                 }
                 break;
-            case "vote":
+            case VOTE:
                 if(context.isLogin) {
-                    handleVote(ctx, splitMessage, context);
+                    handleVote(ctx, command, context);
                 }else{
                     log.warn("Попытка выполнения команды vote неавторизованным пользователем");
-                    ctx.writeAndFlush("Для выполнения команды vote необходимо авторизоваться\n Для авторизации выполните команду login");
+                    ctx.writeAndFlush("Для выполнения команды vote необходимо авторизоваться\n Для авторизации выполните команду login\n");
                 }
                 break;
-            case "delete":
+            case DELETE:
                 if(context.isLogin) {
-                    handleDelete(ctx, splitMessage, context);
+                    handleDelete(ctx, command, context);
                 }else{
                     log.warn("Попытка выполнения команды delete неавторизованным пользователем");
-                    ctx.writeAndFlush("Для выполнения команды delete необходимо авторизоваться\n Для авторизации выполните команду login");
+                    ctx.writeAndFlush("Для выполнения команды delete необходимо авторизоваться\n Для авторизации выполните команду login\n");
                 }
                 break;
-            case "help":
+            case HELP:
                 handleHelp(ctx);
                 break;
-            case "exit":
+            case EXIT:
                 handleExit(ctx, context);
                 break;
-            case "save":
-                if (splitMessage.length > 1){
-                    String filename = splitMessage[1];
-                    if(!filename.endsWith(".json")) {
-                        filename += ".json";
-                    }
-                    ServerApp.save(filename);
-                    log.warn("Данные сохранены в файл {}", filename);
-                    ctx.writeAndFlush("Данные успешно сохранены в файл " + filename + "\n");
+            case SAVE:
+                handleSave(ctx, command, context);
+                break;
+            case LOAD:
+                handleLoad(ctx, command, context);
+                break;
+            case IMPORT:
+                if(context.isLogin) {
+                    handleImport(ctx, command, context);
                 }else{
-                    log.warn("При попытке сохранения данных не указано название файла");
-                    ctx.writeAndFlush("Укажите название файла сохранения данных\n");
+                    log.warn("Попытка выполнения команды import неавторизованным пользователем");
+                    ctx.writeAndFlush("Для выполнения команды import необходимо авторизоваться\n Для авторизации выполните команду login\n");
                 }
                 break;
-            case "load":
-                if (splitMessage.length>1){
-                    String filename = splitMessage[1];
-                    if(!filename.endsWith(".json")) {
-                        filename += ".json";
-                    }
-
-                    try {
-                        ServerApp.load(filename);
-                        log.warn("Данные загружены из файла {}", filename);
-                        ctx.writeAndFlush("Данные успешно загружены из файла " + filename + "\n");
-                    }catch (RuntimeException e){
-                        log.error("Возникла ошибка при попытке загрузки из файла: {}", e.getMessage(), e);
-                        ctx.writeAndFlush("Ошибка загрузки из файла\n");
-                    }
+            case STATS:
+                if(context.isLogin) {
+                    ctx.writeAndFlush(ServerMetrics.INSTANCE.report());
+                }else{
+                    log.warn("Попытка выполнения команды stats неавторизованным пользователем");
+                    ctx.writeAndFlush("Для выполнения команды stats необходимо авторизоваться\n Для авторизации выполните команду login\n");
+                }
+                break;
+            case WATCH:
+            case UNWATCH:
+                if(context.isLogin) {
+                    handleWatch(ctx, command, context);
                 }else{
-                    log.warn("При попытке загрузки данных не указано название файла");
-                    ctx.writeAndFlush("Укажите название существующего файла для загрузки данных\n");
+                    log.warn("Попытка выполнения команды {} неавторизованным пользователем", msg);
+                    ctx.writeAndFlush("Для выполнения команды watch необходимо авторизоваться\n Для авторизации выполните команду login\n");
                 }
                 break;
             default:
@@ -120,76 +147,187 @@ public class ServerHandler extends SimpleChannelInboundHandler<String> {
         }
     }
 
+    private static final ByteBuf HELP = ResponseCache.encode("Доступные команды:\n" +
+            "------------------\n" +
+            "• login -u=<username> – подключиться к серверу с указанным именем пользователя\n" +
+            "• help – показать список доступных команд\n" +
+            "• exit – завершить работу\n" +
+            "\nПосле авторизации доступны:\n" +
+            "• create topic -n=<topic> – создать новый раздел\n" +
+            "• create vote -t=<topic> – создать голосование в указанном разделе\n" +
+            "• create vote -t=<topic> -v=<vote> -d=<description> -o=<a,b,c> – создать голосование одной командой\n" +
+            "• view – показать список разделов\n" +
+            "• view -t=<topic> – показать голосования в разделе\n" +
+            "• view -t=<topic> -v=<vote> – показать детали голосования\n" +
+            "• vote -t=<topic> -v=<vote> – проголосовать\n" +
+            "• vote -t=<topic> -v=<vote> -o=<номер> – проголосовать одной командой\n" +
+            "• delete -t=<topic> -v=<vote> – удалить голосование (только создатель)\n" +
+            "• watch -t=<topic> -v=<vote> – получать результаты голосования при изменениях\n" +
+            "• unwatch -t=<topic> -v=<vote> – отменить подписку\n" +
+            "Значения с пробелами берутся в кавычки: -d=\"текст описания\"\n" +
+            "\nСерверные команды:\n" +
+            "• save <filename> – сохранить данные в файл (.json или компактный .bin)\n" +
+            "• load <filename> – загрузить данные из файла (.json или .bin)\n" +
+            "• import <filename> – загрузить бюллетени из .csv (topic,vote,option,user) или .ndjson\n" +
+            "• stats – показать статистику сервера: команды, задержки, сессии\n");
+
     private void handleHelp(ChannelHandlerContext ctx) {
-        String helpMessage = "Доступные команды:\n" +
-                "------------------\n" +
-                "• login -u=<username> – подключиться к серверу с указанным именем пользователя\n" +
-                "• help – показать список доступных команд\n" +
-                "• exit – завершить работу\n" +
-                "\nПосле авторизации доступны:\n" +
-                "• create topic -n=<topic> – создать новый раздел\n" +
-                "• create vote -t=<topic> – создать голосование в указанном разделе\n" +
-                "• view – показать список разделов\n" +
-                "• view -t=<topic> – показать голосования в разделе\n" +
-                "• view -t=<topic> -v=<vote> – показать детали голосования\n" +
-                "• vote -t=<topic> -v=<vote> – проголосовать\n" +
-                "• delete -t=<topic> -v=<vote> – удалить голосование (только создатель)\n" +
-                "\nСерверные команды:\n" +
-                "• save <filename> – сохранить данные в файл\n" +
-                "• load <filename> – загрузить данные из файла\n";
-
-        ctx.writeAndFlush(helpMessage);
-    }
-
-    private void handleLogin(ChannelHandlerContext ctx, String[] messageParts, CurrentContext context) {
-        if(messageParts.length > 1 && messageParts[1].split("=")[0].equals("-u")){
-            if(messageParts[1].split("=").length == 2) {
-                String username = messageParts[1].split("=")[1];
+        ctx.writeAndFlush(HELP.duplicate());
+    }
+
+    //запись файла идет в отдельном потоке (ServerApp.getBlockingExecutor()), а не в потоке Netty,
+    //который обслуживает и другие соединения; ответ отправляется по завершении
+    private void handleSave(ChannelHandlerContext ctx, CommandLine command, CurrentContext context) {
+        if (command.getTarget() == null) {
+            log.warn("При попытке сохранения данных не указано название файла");
+            ctx.writeAndFlush("Укажите название файла сохранения данных\n");
+            return;
+        }
+        String filename = snapshotFileName(command.getTarget());
+        runBlocking(ctx, context, () -> {
+            ServerApp.save(filename);
+            log.warn("Данные сохранены в файл {}", filename);
+            return "Данные успешно сохранены в файл " + filename + "\n";
+        });
+    }
+
+    private void handleLoad(ChannelHandlerContext ctx, CommandLine command, CurrentContext context) {
+        if (command.getTarget() == null) {
+            log.warn("При попытке загрузки данных не указано название файла");
+            ctx.writeAndFlush("Укажите название существующего файла для загрузки данных\n");
+            return;
+        }
+        String filename = snapshotFileName(command.getTarget());
+        runBlocking(ctx, context, () -> {
+            try {
+                ServerApp.load(filename);
+                log.warn("Данные загружены из файла {}", filename);
+                return "Данные успешно загружены из файла " + filename + "\n";
+            } catch (RuntimeException e) {
+                log.error("Возникла ошибка при попытке загрузки из файла: {}", e.getMessage(), e);
+                return "Ошибка загрузки из файла\n";
+            }
+        });
+    }
+
+    //имя без каталогов: Path разбирает его по правилам платформы, точки внутри имени допустимы
+    private static boolean isPlainFileName(String filename) {
+        try {
+            Path name = Path.of(filename).getFileName();
+            return name != null && name.toString().equals(filename) && !filename.equals("..");
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    //файл бюллетеней берется из папки data, как и снимки; импорт идет в фоне и может быть долгим
+    private void handleImport(ChannelHandlerContext ctx, CommandLine command, CurrentContext context) {
+        if (command.getTarget() == null) {
+            log.warn("При попытке импорта не указано название файла");
+            ctx.writeAndFlush("Укажите файл бюллетеней в папке data: import <filename>.csv или .ndjson\n");
+            return;
+        }
+        String filename = command.getTarget();
+        //только файлы из самой папки data
+        if (!isPlainFileName(filename)) {
+            log.warn("Недопустимое имя файла импорта {}. Пользователь: {}", filename, context.name);
+            ctx.writeAndFlush("Имя файла не должно содержать путь: import <filename>\n");
+            return;
+        }
+        runBlocking(ctx, context, () -> {
+            try {
+                BallotImport.Report report = BallotImport.run(Path.of("data", filename));
+                return "Импорт из файла " + filename + ": " + report + "\n";
+            } catch (IOException e) {
+                log.error("Возникла ошибка при импорте из файла {}: {}", filename, e.getMessage(), e);
+                return "Ошибка импорта из файла " + filename + "\n";
+            }
+        });
+    }
+
+    private void runBlocking(ChannelHandlerContext ctx, CurrentContext context, Supplier<String> task) {
+        context.busy = true;
+        CompletableFuture.supplyAsync(task, ServerApp.getBlockingExecutor())
+                .whenComplete((reply, error) -> inEventLoop(ctx, () -> {
+                    if (error != null) {
+                        log.error("Ошибка фоновой операции у пользователя {}: {}", context.name, error.getMessage(), error);
+                    }
+                    ctx.writeAndFlush(error == null ? reply : "Ошибка выполнения команды\n");
+                    context.busy = false;
+                    //клиент отключился во время операции: сессия уже завершена (endSession), и отложенные
+                    //команды не должны ни входить от ее имени, ни менять данные
+                    if (!ctx.channel().isActive() || ctx.channel().attr(SESSION).get() != context) {
+                        context.deferred.clear();
+                        return;
+                    }
+                    //команды, пришедшие во время операции, обрабатываются по порядку; если одна из них снова
+                    //запустила фоновую операцию, остальные ждут в очереди ее завершения
+                    String msg;
+                    while (!context.busy && (msg = context.deferred.poll()) != null) {
+                        dispatch(ctx, msg, context);
+                    }
+                }));
+    }
+
+    private static void inEventLoop(ChannelHandlerContext ctx, Runnable task) {
+        EventExecutor executor = ctx.executor();
+        if (executor == null || executor.inEventLoop()) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    private void handleLogin(ChannelHandlerContext ctx, CommandLine command, CurrentContext context) {
+        if(command.getUser() != null){
+            if(!command.getUser().isEmpty()) {
+                String username = command.getUser();
                 if(!ServerApp.loginUser(username)) {
                     log.warn("Повторная регистрация: {}", username);
                     ctx.writeAndFlush("Имя " + username + " уже используется\n");
                     return;
                 }
                 context.isLogin = true;
-                context.name = username;
+                context.userId = UserRegistry.idOf(username);
+                context.name = UserRegistry.nameOf(context.userId);
                 log.info("Пользователь {} подключен", username);
                 ctx.writeAndFlush("Вы вошли в систему. Login: " + username + "\n");
             }else{
-                log.warn("Ошибка ввода имени пользователя: {}", Arrays.toString(messageParts));
+                log.warn("Ошибка ввода имени пользователя. Команда login");
                 ctx.writeAndFlush("Ошибка ввода имени пользователя username\n");
             }
         }else{
-            log.warn("Неправильно введена команда login: {}", Arrays.toString(messageParts));
+            log.warn("Неправильно введена команда login: не указан параметр -u");
             ctx.writeAndFlush("Неправильно введена команда login -u=username\n");
         }
     }
 
-    private void handleCreate(ChannelHandlerContext ctx, String[] messageParts, CurrentContext context) {
-        if (messageParts.length > 1 && messageParts[1].equalsIgnoreCase("topic")) {
-            String topicName = messageParts[2].split("=")[1];
-            synchronized (ServerApp.getTopics()) {
-                if (!ServerApp.getTopics().containsKey(topicName)) {
-                    ServerApp.getTopics().put(topicName, new Topic(topicName));
-
-                    log.info("Создан раздел: {}. Пользователь: {}", topicName, context.name);
-                    ctx.writeAndFlush("Создан новый раздел " + topicName + "\n");
-                } else {
-                    log.warn("Попытка повторного создания раздела: {}", topicName);
-                    ctx.writeAndFlush("Раздел с таким именем уже существует");
-                }
+    private void handleCreate(ChannelHandlerContext ctx, CommandLine command, CurrentContext context) {
+        if ("topic".equalsIgnoreCase(command.getTarget())) {
+            // имя раздела принимается и как -n=, и как -t=
+            String topicName = emptyToNull(command.getName() != null ? command.getName() : command.getTopic());
+            if (topicName == null) {
+                log.warn("Не указано имя раздела. Команда create. Пользователь: {}", context.name);
+                ctx.writeAndFlush("Команда введена некорректно. Укажите имя раздела -n=topic\n");
+            } else if (ServerApp.createTopic(topicName) == Result.OK) {
+                log.info("Создан раздел: {}. Пользователь: {}", topicName, context.name);
+                ctx.writeAndFlush("Создан новый раздел " + topicName + "\n");
+            } else {
+                log.warn("Попытка повторного создания раздела: {}", topicName);
+                ctx.writeAndFlush("Раздел с таким именем уже существует\n");
             }
-        }else if(messageParts.length > 1 && messageParts[1].equalsIgnoreCase("vote")) {
-            if(messageParts.length > 2 && messageParts[2].split("=")[0].equals("-t")){
-                String topicName = messageParts[2].split("=")[1];
-                synchronized (ServerApp.getTopics()) {
-                    if (ServerApp.getTopics().containsKey(topicName)) {
-                        context.currentTopic = topicName;
-                        context.state = State.WAITING_FOR_NAME;
-                        ctx.writeAndFlush("Создание голосования в разделе " + topicName + "\n Введите название голосования:");
-                    } else {
-                        log.warn("Раздел для создания голосования {} не найден. Пользователь: {}", topicName, context.name);
-                        ctx.writeAndFlush("Такого  раздела не существует\n");
-                    }
+        }else if("vote".equalsIgnoreCase(command.getTarget())) {
+            if (command.getVote() != null) {
+                createVoteAtOnce(ctx, command, context);
+            } else if(emptyToNull(command.getTopic()) != null){
+                String topicName = command.getTopic();
+                if (ServerApp.getTopics().containsKey(topicName)) {
+                    context.currentTopic = topicName;
+                    context.moveTo(State.WAITING_FOR_NAME);
+                    ctx.writeAndFlush("Создание голосования в разделе " + topicName + "\n Введите название голосования:\n");
+                } else {
+                    log.warn("Раздел для создания голосования {} не найден. Пользователь: {}", topicName, context.name);
+                    ctx.writeAndFlush("Такого  раздела не существует\n");
                 }
             }else {
                 log.warn("Введены некорректные параметры. Команда create. Пользователь: {}", context.name);
@@ -201,222 +339,328 @@ public class ServerHandler extends SimpleChannelInboundHandler<String> {
         }
     }
 
+    //create vote -t=<topic> -v=<vote> -d=<description> -o=<a,b,c>: голосование создается одной командой,
+    //без шагов диалога; параметры проверяются до создания, сессия остается в меню
+    private void createVoteAtOnce(ChannelHandlerContext ctx, CommandLine command, CurrentContext context) {
+        String topicName = emptyToNull(command.getTopic());
+        String voteName = emptyToNull(command.getVote());
+        if (topicName == null || voteName == null || emptyToNull(command.getOptions()) == null) {
+            log.warn("Введены некорректные параметры. Команда create vote. Пользователь: {}", context.name);
+            ctx.writeAndFlush("Укажите раздел, название и варианты ответа: create vote -t=<topic> -v=<vote> -d=<description> -o=<a,b,c>\n");
+            return;
+        }
+        List<String> options = parseOptions(command.getOptions());
+        if (options == null) {
+            log.warn("Повторяющиеся или пустые варианты ответа {}. Пользователь: {}", command.getOptions(), context.name);
+            ctx.writeAndFlush("Варианты ответа не должны быть пустыми или повторяться\n");
+            return;
+        }
+        String description = command.getDescription() == null ? "" : command.getDescription();
+        Result result = ServerApp.createVote(topicName, new Vote(voteName, description, options, context.name));
+        if (result == Result.OK) {
+            log.info("Пользователь {} создал голосование {} в разделе {}", context.name, voteName, topicName);
+            ctx.writeAndFlush("Новый раздел голосования успешно создан\n");
+        } else if (result == Result.ALREADY_EXISTS) {
+            log.warn("Попытка повторного создания голосования. Пользователь {}", context.name);
+            ctx.writeAndFlush("Голосование с таким названием уже существует\n");
+        } else {
+            log.warn("Раздел для создания голосования {} не найден. Пользователь: {}", topicName, context.name);
+            ctx.writeAndFlush("Такого  раздела не существует\n");
+        }
+    }
+
+    //варианты через запятую в порядке ввода; null, если вариант пустой или повторяется
+    private static List<String> parseOptions(String list) {
+        List<String> options = new ArrayList<>();
+        int start = 0;
+        while (start <= list.length()) {
+            int end = list.indexOf(',', start);
+            if (end < 0) {
+                end = list.length();
+            }
+            String option = list.substring(start, end).trim();
+            if (option.isEmpty() || options.contains(option)) {
+                return null;
+            }
+            options.add(option);
+            start = end + 1;
+        }
+        return options;
+    }
+
     private void handleVoteCreation(ChannelHandlerContext ctx, String msg, CurrentContext context) {
-        synchronized (ServerApp.getTopics()) {
-            switch (context.state) {
-                case WAITING_FOR_NAME:
-                    if(ServerApp.getTopics().get(context.currentTopic).getAllVotes().containsKey(msg)) {
-                        log.warn("Попытка повторного создания голосования. Пользователь {}", context.name);
-                        ctx.writeAndFlush("Голосование с таким названием уже существует");
-                        return;
-                    }
-                    context.voteName = msg;
-                    context.state = State.WAITING_FOR_DESC;
-                    ctx.writeAndFlush("Введите описание к голосованию\n");
-                    break;
-                case WAITING_FOR_DESC:
-                    context.voteDescription = msg;
-                    context.state = State.WAITING_FOR_QUANTITY;
-                    ctx.writeAndFlush("Введите количество возможных ответов\n");
-                    break;
-                case WAITING_FOR_QUANTITY:
-                    try {
-                        if (Integer.parseInt(msg) > 0) {
-                            context.numOfOptions = Integer.parseInt(msg);
-                            context.state = State.WAITING_FOR_OPTIONS;
-                            ctx.writeAndFlush("Введите вариант ответа 1\n");
-                        } else {
-                            log.warn("Попытка создания голосования без ответов {}", context.name);
-                            ctx.writeAndFlush("Должен быть хотя бы один вариант ответа\n");
-                        }
-                    } catch (NumberFormatException e) {
-                        log.warn("Ошибка ввода: {}. Пользователь {}", msg, context.name);
-                        ctx.writeAndFlush("Ошибка ввода. Введите число возможных ответов\n");
-                    }
-                    break;
-                case WAITING_FOR_OPTIONS:
-                    if (!context.voteOptions.containsKey(msg.toLowerCase())) {
-                        context.voteOptions.put(msg, new ArrayList<>());
+        Topic currentTopic = ServerApp.getTopics().get(context.currentTopic);
+        switch (context.state) {
+            case WAITING_FOR_NAME:
+                if(currentTopic.getAllVotes().containsKey(msg)) {
+                    log.warn("Попытка повторного создания голосования. Пользователь {}", context.name);
+                    ctx.writeAndFlush("Голосование с таким названием уже существует\n");
+                    return;
+                }
+                context.voteName = msg;
+                context.moveTo(State.WAITING_FOR_DESC);
+                ctx.writeAndFlush("Введите описание к голосованию\n");
+                break;
+            case WAITING_FOR_DESC:
+                context.voteDescription = msg;
+                context.moveTo(State.WAITING_FOR_QUANTITY);
+                ctx.writeAndFlush("Введите количество возможных ответов\n");
+                break;
+            case WAITING_FOR_QUANTITY:
+                try {
+                    if (Integer.parseInt(msg) > 0) {
+                        context.numOfOptions = Integer.parseInt(msg);
+                        context.moveTo(State.WAITING_FOR_OPTIONS);
+                        ctx.writeAndFlush("Введите вариант ответа 1\n");
                     } else {
-                        log.warn("Попытка повторного создания варианта ответа: {} Пользователь: {}", msg, context.name);
-                        ctx.writeAndFlush("Такой вариант ответа уже существует\nВведите другой вариант ответа " + (context.voteOptions.size() + 1) + "\n");
+                        log.warn("Попытка создания голосования без ответов {}", context.name);
+                        ctx.writeAndFlush("Должен быть хотя бы один вариант ответа\n");
                     }
-                    if (context.voteOptions.size() < context.numOfOptions) {
-                        ctx.writeAndFlush("Введите вариант ответа " + (context.voteOptions.size() + 1) + "\n");
-                    } else {
-                        Topic topic = ServerApp.getTopics().get(context.currentTopic);
-                        topic.addVote(new Vote(context.voteName, context.voteDescription, context.voteOptions, context.name));
+                } catch (NumberFormatException e) {
+                    log.warn("Ошибка ввода: {}. Пользователь {}", msg, context.name);
+                    ctx.writeAndFlush("Ошибка ввода. Введите число возможных ответов\n");
+                }
+                break;
+            case WAITING_FOR_OPTIONS:
+                if (!context.voteOptions.containsKey(msg.toLowerCase())) {
+                    context.voteOptions.put(msg, new ArrayList<>());
+                } else {
+                    log.warn("Попытка повторного создания варианта ответа: {} Пользователь: {}", msg, context.name);
+                    ctx.writeAndFlush("Такой вариант ответа уже существует\nВведите другой вариант ответа " + (context.voteOptions.size() + 1) + "\n");
+                }
+                if (context.voteOptions.size() < context.numOfOptions) {
+                    ctx.writeAndFlush("Введите вариант ответа " + (context.voteOptions.size() + 1) + "\n");
+                } else {
+                    // название могло быть занято другим пользователем, пока шел ввод вариантов
+                    Result result = ServerApp.createVote(context.currentTopic,
+                            new Vote(context.voteName, context.voteDescription, context.voteOptions, context.name));
+                    if (result == Result.OK) {
                         log.info("Пользователь {} создал голосование {} в разделе {}", context.name, context.voteName, context.currentTopic);
                         ctx.writeAndFlush("Новый раздел голосования успешно создан\n");
+                    } else if (result == Result.ALREADY_EXISTS) {
+                        log.warn("Попытка повторного создания голосования. Пользователь {}", context.name);
+                        ctx.writeAndFlush("Голосование с таким названием уже существует\n");
+                    } else {
+                        log.warn("Раздел для создания голосования {} не найден. Пользователь: {}", context.currentTopic, context.name);
+                        ctx.writeAndFlush("Такого  раздела не существует\n");
+                    }
 
-                        context.state = State.MENU;
-                        context.voteName = null;
-                        context.currentTopic = null;
-                        context.voteDescription = null;
-                        context.numOfOptions = 0;
-                        if (context.voteOptions != null) {
-                            context.voteOptions.clear();
-                        }
-                        if (context.currentOptions != null) {
-                            context.currentOptions.clear();
-                        }
+                    context.moveTo(State.MENU);
+                    context.voteName = null;
+                    context.currentTopic = null;
+                    context.voteDescription = null;
+                    context.numOfOptions = 0;
+                    if (context.voteOptions != null) {
+                        context.voteOptions.clear();
                     }
-                    break;
-            }
+                    if (context.currentOptions != null) {
+                        context.currentOptions.clear();
+                    }
+                }
+                break;
         }
     }
 
-    private void handleView(ChannelHandlerContext ctx, String[] messageParts) {
-        String topicName = null;
-        String voteName = null;
+    private void handleView(ChannelHandlerContext ctx, CommandLine command) {
+        String topicName = emptyToNull(command.getTopic());
+        String voteName = emptyToNull(command.getVote());
+        Map<String, Topic> topics = ServerApp.getTopics();
+        Topic topic = topicName == null ? null : topics.get(topicName);
 
-        for(String part : messageParts){ // записываем входные параметры
-            if(part.startsWith("-t=") && part.split("=").length == 2){
-                topicName = part.split("=")[1];
-            }else if(part.startsWith("-v=") && part.split("=").length == 2){
-                voteName = part.split("=")[1];
-            }
+        if (topicName != null && topic == null) {
+            log.warn("Не удалось найти раздел {} во время выполнения команды view пользователем {}", topicName, session(ctx).name);
+            log.warn("Раздел {} не найден. Команды view. Пользователь {}", topicName, session(ctx).name);
+            ctx.writeAndFlush("Раздел " + topicName + " не найден\n");
+            return;
         }
 
-        synchronized (ServerApp.getTopics()) {
-            if (topicName != null && !ServerApp.getTopics().containsKey(topicName)) {
-                log.warn("Не удалось найти раздел {} во время выполнения команды view пользователем {}", topicName, currentClientCtx.get(ctx).name);
-                log.warn("Раздел {} не найден. Команды view. Пользователь {}", topicName, currentClientCtx.get(ctx).name);
-                ctx.writeAndFlush("Раздел " + topicName + " не найден\n");
-                return;
-            }
-
-            StringBuilder serverResponse = new StringBuilder();
-
-            if (topicName == null && voteName == null) {
-                if (ServerApp.getTopics().isEmpty()) {
-                    serverResponse.append("Не создано ни одного раздела\n");
-                } else {
-                    log.info("Запрос всех разделов. Пользователь {}", currentClientCtx.get(ctx).name);
-                    serverResponse.append("Текущий список разделов:\n");
-                    for (Map.Entry<String, Topic> topicEntry : ServerApp.getTopics().entrySet()) {
-                        serverResponse.append(topicEntry.getKey()).append(" (голосований в разделе: ").append(topicEntry.getValue().getAllVotes().size()).append(")\n");
-                    }
-                }
-            } else if (topicName != null && voteName == null) {
-                Topic topic = ServerApp.getTopics().get(topicName);
-                log.info("Запрос всех голосований в разделе {}. Пользователь {}", topicName, currentClientCtx.get(ctx).name);
-                serverResponse.append("Голосования в разделе: ").append(topicName).append(":\n");
-                for (Map.Entry<String, Vote> voteEntry : topic.getAllVotes().entrySet()) {
-                    serverResponse.append("- ").append(voteEntry.getKey()).append("\n");
-                }
-            } else if (topicName != null && voteName != null) {
-                Topic topic = ServerApp.getTopics().get(topicName);
-                Vote vote = topic.getVote(voteName);
-                if (vote == null) {
-                    log.warn("Голосование {} в разделе {} не найдено. Команда view. Пользователь: {}", voteName, topicName, currentClientCtx.get(ctx).name);
-                    ctx.writeAndFlush("Голосование " + voteName + " не найдено в разделе " + topicName + "\n");
-                    return;
-                }
-                log.info("Запрос информации о голосовании {} в разделе {}. Пользователь: {}",voteName, topicName, currentClientCtx.get(ctx).name);
-                serverResponse.append("Голосование ").append(voteName).append(":\n");
-                serverResponse.append("Тема голосования: ").append(vote.getDescription()).append("\n").append("Варианты ответа:\n");
-                for (Map.Entry<String, List<String>> optionEntry : vote.getOptions().entrySet()) {
-                    serverResponse.append("- ").append(optionEntry.getKey()).append(". Проголосовавших пользователей: ").append(optionEntry.getValue().size()).append("\n");
-                }
-            } else {
-                log.warn("Ввод некорректных параметров. Пользователь: {}", currentClientCtx.get(ctx).name);
-                ctx.writeAndFlush("Неверно введена команда view\n");
+        //ответы берутся из ResponseCache и строятся заново, только если данные изменились
+        if (topicName == null && voteName == null) {
+            log.info("Запрос всех разделов. Пользователь {}", session(ctx).name);
+            ctx.writeAndFlush(ResponseCache.topicList(topics, () -> renderTopicList(topics)));
+        } else if (topicName != null && voteName == null) {
+            log.info("Запрос всех голосований в разделе {}. Пользователь {}", topicName, session(ctx).name);
+            ctx.writeAndFlush(ResponseCache.topic(topic, () -> renderTopic(topic)));
+        } else if (topicName != null && voteName != null) {
+            Vote vote = topic.getVote(voteName);
+            if (vote == null) {
+                log.warn("Голосование {} в разделе {} не найдено. Команда view. Пользователь: {}", voteName, topicName, session(ctx).name);
+                ctx.writeAndFlush("Голосование " + voteName + " не найдено в разделе " + topicName + "\n");
                 return;
             }
+            log.info("Запрос информации о голосовании {} в разделе {}. Пользователь: {}",voteName, topicName, session(ctx).name);
+            ctx.writeAndFlush(ResponseCache.vote(vote, () -> renderVote(vote)));
+        } else {
+            log.warn("Ввод некорректных параметров. Пользователь: {}", session(ctx).name);
+            ctx.writeAndFlush("Неверно введена команда view\n");
+        }
+    }
 
-            ctx.writeAndFlush(serverResponse.toString());
+    private static String renderTopicList(Map<String, Topic> topics) {
+        if (topics.isEmpty()) {
+            return "Не создано ни одного раздела\n";
+        }
+        StringBuilder serverResponse = new StringBuilder("Текущий список разделов:\n");
+        for (Map.Entry<String, Topic> topicEntry : topics.entrySet()) {
+            serverResponse.append(topicEntry.getKey()).append(" (голосований в разделе: ").append(topicEntry.getValue().getAllVotes().size()).append(")\n");
         }
+        return serverResponse.toString();
     }
 
-    private void handleVote(ChannelHandlerContext ctx, String[] messageParts, CurrentContext context) {
-        String topicName = null;
-        String voteName = null;
+    private static String renderTopic(Topic topic) {
+        StringBuilder serverResponse = new StringBuilder("Голосования в разделе: ").append(topic.getName()).append(":\n");
+        for (Map.Entry<String, Vote> voteEntry : topic.getAllVotes().entrySet()) {
+            serverResponse.append("- ").append(voteEntry.getKey()).append("\n");
+        }
+        return serverResponse.toString();
+    }
 
-        for (String part : messageParts) {
-            if (part.startsWith("-t=") && part.split("=").length == 2) {
-                topicName = part.split("=")[1];
-            } else if (part.startsWith("-v=") && part.split("=").length == 2) {
-                voteName = part.split("=")[1];
-            }
+    static String renderVote(Vote vote) {
+        StringBuilder serverResponse = new StringBuilder();
+        serverResponse.append("Голосование ").append(vote.getName()).append(":\n");
+        serverResponse.append("Тема голосования: ").append(vote.getDescription()).append("\n").append("Варианты ответа:\n");
+        List<String> optionNames = vote.optionNames();
+        for (int i = 0; i < optionNames.size(); i++) {
+            serverResponse.append("- ").append(optionNames.get(i)).append(". Проголосовавших пользователей: ").append(vote.count(i)).append("\n");
         }
+        return serverResponse.toString();
+    }
+
+    private void handleVote(ChannelHandlerContext ctx, CommandLine command, CurrentContext context) {
+        String topicName = emptyToNull(command.getTopic());
+        String voteName = emptyToNull(command.getVote());
 
         if (topicName == null) {
             log.warn("Ввод некорректных параметров. Команда vote. Пользователь: {}", context.name);
             ctx.writeAndFlush("Не указано имя раздела\n");
             return;
         }
-        synchronized (ServerApp.getTopics()) {
-            if (!ServerApp.getTopics().containsKey(topicName)) {
-                log.warn("Раздел {} не найден. Команда vote. Пользователь: {}", topicName, context.name);
-                ctx.writeAndFlush("Раздел " + topicName + " не найден\n");
-                return;
-            }
+        if (!ServerApp.getTopics().containsKey(topicName)) {
+            log.warn("Раздел {} не найден. Команда vote. Пользователь: {}", topicName, context.name);
+            ctx.writeAndFlush("Раздел " + topicName + " не найден\n");
+            return;
+        }
 
-            Map<String, Vote> votes = ServerApp.getTopics().get(topicName).getAllVotes();
+        Map<String, Vote> votes = ServerApp.getTopics().get(topicName).getAllVotes();
+
+        if (voteName == null) {
+            log.warn("Некорректный параметр -v. Команда vote. Пользователь: {}", context.name);
+            ctx.writeAndFlush("Не указано имя голосования\n");
+            return;
+        }
+        Vote vote = votes.get(voteName);
+        if (vote != null && command.getOptions() != null) {
+            castVoteAtOnce(ctx, command.getOptions(), topicName, vote, context);
+            return;
+        }
 
-            if (voteName == null) {
-                log.warn("Некорректный параметр -v. Команда vote. Пользователь: {}", context.name);
-                ctx.writeAndFlush("Не указано имя голосования\n");
+        if (vote != null) {
+            if (vote.hasVoted(context.userId)) {
+                log.warn("Попытка повторного голосования {} в разделе {}. Пользователь {}", voteName, topicName, context.name);
+                ctx.writeAndFlush("Вы уже голосовали в этом голосовании.\n");
                 return;
             }
 
-            if (votes.containsKey(voteName)) {
-                Map<String, List<String>> voteOptions = votes.get(voteName).getOptions();
-                List<String> optionKeys = new ArrayList<>(voteOptions.keySet());
+            List<String> optionKeys = vote.optionNames();
+            StringBuilder serverResponse = new StringBuilder("Вы перешли к голосованию ").append(voteName).append(". Голосование:\n").append(vote.getDescription()).append("\n");
+            serverResponse.append("Чтобы проголосовать, введите цифру варианта ответа\n");
 
-                boolean hasVoted = voteOptions.values().stream()
-                        .anyMatch(userList -> userList.contains(context.name));
-
-                if (hasVoted) {
-                    log.warn("Попытка повторного голосования {} в разделе {}. Пользователь {}", voteName, topicName, context.name);
-                    ctx.writeAndFlush("Вы уже голосовали в этом голосовании.\n");
-                    return;
-                }
+            for (int i = 0; i < optionKeys.size(); i++) {
+                serverResponse.append(i + 1).append(". ").append(optionKeys.get(i)).append("\n");
+            }
 
-                StringBuilder serverResponse = new StringBuilder("Вы перешли к голосованию ").append(voteName).append(". Голосование:\n").append(votes.get(voteName).getDescription()).append("\n");
-                serverResponse.append("Чтобы проголосовать, введите цифру варианта ответа\n");
+            ctx.writeAndFlush(serverResponse.toString());
 
-                for (int i = 0; i < optionKeys.size(); i++) {
-                    serverResponse.append(i + 1).append(". ").append(optionKeys.get(i)).append("\n");
-                }
+            context.moveTo(State.WAITING_FOR_VOTE);
+            context.voteName = voteName;
+            context.currentTopic = topicName;
+            context.currentOptions = optionKeys;
+        } else {
+            log.warn("Не удалось найти голосование {} в разделе {} во время выполнения команды vote пользователем {}", voteName, topicName, context.name);
+            log.warn("Голосование {} в разделе {} не найдено. Команда vote. Пользователь {}", voteName, topicName, context.name);
+            ctx.writeAndFlush("Голосование " + voteName + " не найдено в разделе " + topicName + "\n");
+            return;
+        }
+    }
 
-                ctx.writeAndFlush(serverResponse.toString());
+    //vote -t=<topic> -v=<vote> -o=<номер>: голос засчитывается одной командой, без перехода в WAITING_FOR_VOTE
+    private void castVoteAtOnce(ChannelHandlerContext ctx, String option, String topicName, Vote vote, CurrentContext context) {
+        String voteName = vote.getName();
+        int choice;
+        try {
+            choice = Integer.parseInt(option);
+        } catch (NumberFormatException e) {
+            choice = 0;
+        }
+        Result result = ServerApp.castVote(topicName, voteName, choice - 1, context.userId);
+        if (result == Result.OK) {
+            log.info("Пользователь {} проголосовал в голосовании {} раздела {}", context.name, voteName, topicName);
+            ctx.writeAndFlush("Ваш голос засчитан в голосовании\n");
+        } else if (result == Result.ALREADY_VOTED) {
+            log.warn("Попытка повторного голосования {} в разделе {}. Пользователь {}", voteName, topicName, context.name);
+            ctx.writeAndFlush("Вы уже голосовали в этом голосовании.\n");
+        } else if (result == Result.INVALID_OPTION) {
+            log.warn("Ввод некорректного номера варианта {}. Команда vote. Пользователь: {}", option, context.name);
+            ctx.writeAndFlush("Введите число от 1 до " + vote.optionCount() + "\n");
+        } else {
+            log.warn("Голосование {} в разделе {} не найдено. Команда vote. Пользователь {}", voteName, topicName, context.name);
+            ctx.writeAndFlush("Голосование " + voteName + " не найдено в разделе " + topicName + "\n");
+        }
+    }
 
-                context.state = State.WAITING_FOR_VOTE;
-                context.voteName = voteName;
-                context.currentTopic = topicName;
-                context.currentOptions = optionKeys;
-            } else {
-                log.warn("Не удалось найти голосование {} в разделе {} во время выполнения команды vote пользователем {}", voteName, topicName, context.name);
-                log.warn("Голосование {} в разделе {} не найдено. Команда vote. Пользователь {}", voteName, topicName, context.name);
-                ctx.writeAndFlush("Голосование " + voteName + " не найдено в разделе " + topicName + "\n");
-                return;
-            }
+    //watch подписывает подключение на результаты голосования, unwatch отменяет подписку
+    private void handleWatch(ChannelHandlerContext ctx, CommandLine command, CurrentContext context) {
+        String topicName = emptyToNull(command.getTopic());
+        String voteName = emptyToNull(command.getVote());
+        if (topicName == null || voteName == null) {
+            log.warn("Ввод некорректных параметров. Команда watch. Пользователь: {}", context.name);
+            ctx.writeAndFlush("Укажите раздел и голосование: watch -t=<topic> -v=<vote>\n");
+            return;
         }
+        Topic topic = ServerApp.getTopics().get(topicName);
+        Vote vote = topic == null ? null : topic.getVote(voteName);
+        if (vote == null) {
+            log.warn("Голосование {} в разделе {} не найдено. Команда watch. Пользователь {}", voteName, topicName, context.name);
+            ctx.writeAndFlush("Голосование " + voteName + " не найдено в разделе " + topicName + "\n");
+            return;
+        }
+        if (command.getCommand() == CommandLine.Command.UNWATCH) {
+            boolean removed = VoteWatchers.unsubscribe(vote, ctx.channel());
+            ctx.writeAndFlush(removed ? "Подписка на голосование " + voteName + " отменена\n"
+                    : "Вы не подписаны на голосование " + voteName + "\n");
+            return;
+        }
+        VoteWatchers.subscribe(vote, ctx.channel());
+        log.info("Пользователь {} подписан на голосование {} раздела {}", context.name, voteName, topicName);
+        // сначала подтверждение и текущие результаты, дальше - при изменениях
+        ctx.write("Вы подписаны на голосование " + voteName + ". Результаты будут приходить при изменениях\n");
+        ctx.writeAndFlush(ResponseCache.vote(vote, () -> renderVote(vote)));
     }
 
     private void handleVoteChoice(ChannelHandlerContext ctx, String msg, CurrentContext context) {
         try {
             int choice = Integer.parseInt(msg);
 
-            if(choice < 0 || choice > context.currentOptions.size()) {
+            if(choice < 1 || choice > context.currentOptions.size()) {
                 log.warn("Ввод некорректного числа {}. Команда vote. Пользователь: {}", msg, context.name);
                 ctx.writeAndFlush("Введите число от 1 до " + context.currentOptions.size() + "\n");
                 return;
             }
 
-            synchronized (ServerApp.getTopics()) {
-                String chosenOption = context.currentOptions.get(choice - 1);
-                Topic topic = ServerApp.getTopics().get(context.currentTopic);
-                Vote vote = topic.getVote(context.voteName);
-                vote.vote(chosenOption, context.name);
-
+            Result result = ServerApp.castVote(context.currentTopic, context.voteName, choice - 1, context.userId);
+            if (result == Result.OK) {
                 log.info("Пользователь {} проголосовал в голосовании {} раздела {}", context.name, context.voteName, context.currentTopic);
                 ctx.writeAndFlush("Ваш голос засчитан в голосовании\n");
+            } else if (result == Result.ALREADY_VOTED) {
+                log.warn("Попытка повторного голосования {} в разделе {}. Пользователь {}", context.voteName, context.currentTopic, context.name);
+                ctx.writeAndFlush("Вы уже голосовали в этом голосовании.\n");
+            } else {
+                // голосование удалили, пока пользователь выбирал вариант ответа
+                log.warn("Голосование {} в разделе {} удалено до выбора варианта. Пользователь {}", context.voteName, context.currentTopic, context.name);
+                ctx.writeAndFlush("Голосование " + context.voteName + " больше не существует\n");
             }
 
-            context.state = State.MENU;
+            context.moveTo(State.MENU);
             context.voteName = null;
             context.currentTopic = null;
             context.currentOptions = null;
@@ -426,17 +670,9 @@ public class ServerHandler extends SimpleChannelInboundHandler<String> {
         }
     }
 
-    private void handleDelete(ChannelHandlerContext ctx, String[] messageParts, CurrentContext context) {
-        String topicName = null;
-        String voteName = null;
-
-        for(String part : messageParts) {
-            if(part.startsWith("-t=") && part.split("=").length == 2){
-                topicName = part.split("=")[1];
-            }else if(part.startsWith("-v=") && part.split("=").length == 2){
-                voteName = part.split("=")[1];
-            }
-        }
+    private void handleDelete(ChannelHandlerContext ctx, CommandLine command, CurrentContext context) {
+        String topicName = emptyToNull(command.getTopic());
+        String voteName = emptyToNull(command.getVote());
 
         if (topicName == null) {
             log.warn("Не указано название раздела. Команда delete. Пользователь: {}", context.name);
@@ -444,56 +680,115 @@ public class ServerHandler extends SimpleChannelInboundHandler<String> {
             return;
         }
 
-        synchronized (ServerApp.getTopics()) {
-            if (!ServerApp.getTopics().containsKey(topicName)) {
-                log.warn("Раздел {} не найден. Команда delete. Пользователь: {}", topicName, context.name);
-                ctx.writeAndFlush("Раздел " + topicName + " не найден\n");
-                return;
-            }
+        if (!ServerApp.getTopics().containsKey(topicName)) {
+            log.warn("Раздел {} не найден. Команда delete. Пользователь: {}", topicName, context.name);
+            ctx.writeAndFlush("Раздел " + topicName + " не найден\n");
+            return;
+        }
 
-            Map<String, Vote> votes = ServerApp.getTopics().get(topicName).getAllVotes();
+        if (voteName == null) {
+            log.warn("Не указано название голосования. Команда delete. Пользователь: {}", context.name);
+            ctx.writeAndFlush("Не указано название голосования.\n");
+            return;
+        }
 
-            if (voteName == null) {
-                log.warn("Не указано название голосования. Команда delete. Пользователь: {}", context.name);
-                ctx.writeAndFlush("Не указано название голосования.\n");
-                return;
-            }
-            if (votes.containsKey(voteName)) {
-                if (context.name.equals(votes.get(voteName).getCreator())) {
-                    ServerApp.getTopics().get(topicName).deleteVote(voteName);
-                    log.info("Удалено голосование {} из раздела {}. Пользователь {}", voteName, topicName, context.name);
-                    ctx.writeAndFlush("Голосование " + voteName + " удалено из раздела" + "\n");
-                } else {
-                    log.warn("Ошибка прав доступа. Команда delete. Пользователь: {}", context.name);
-                    ctx.writeAndFlush("Ошибка доступа. Вы не можете удалить это голосование");
-                    return;
-                }
-            } else {
+        switch (ServerApp.deleteVote(topicName, voteName, context.name)) {
+            case OK:
+                log.info("Удалено голосование {} из раздела {}. Пользователь {}", voteName, topicName, context.name);
+                ctx.writeAndFlush("Голосование " + voteName + " удалено из раздела" + "\n");
+                break;
+            case TOPIC_NOT_FOUND:
+                log.warn("Раздел {} не найден. Команда delete. Пользователь: {}", topicName, context.name);
+                ctx.writeAndFlush("Раздел " + topicName + " не найден\n");
+                break;
+            case ACCESS_DENIED:
+                log.warn("Ошибка прав доступа. Команда delete. Пользователь: {}", context.name);
+                ctx.writeAndFlush("Ошибка доступа. Вы не можете удалить это голосование\n");
+                break;
+            default:
                 log.warn("Голосование {} в разделе {} не найдено. Команда delete. Пользователь: {}", voteName, topicName, context.name);
                 ctx.writeAndFlush("Голосования " + voteName + " не существует в разделе " + topicName + "\n");
-                return;
-            }
         }
     }
 
+    //без расширения .json или .bin файл сохраняется в JSON
+    private static String snapshotFileName(String filename) {
+        return filename.endsWith(".json") || ServerApp.isBinary(filename) ? filename : filename + ".json";
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
     private void handleExit(ChannelHandlerContext ctx, CurrentContext context){
         ctx.writeAndFlush("Завершение работы\n").addListener(future -> {
             if (context.isLogin) {
-                ServerApp.logoutUser(context.name);
                 log.info("Клиент {} (пользователь {}) отключен", ctx.channel().remoteAddress(), context.name);
                 System.out.println("Пользователь " + context.name + " отключен");
             }
-            currentClientCtx.remove(ctx);
+            endSession(ctx);
             ctx.close();
         });
     }
 
     @Override
     protected  void channelRead0(ChannelHandlerContext ctx, String msg){
-        //получение/создание контекста для текущего клиента
-        CurrentContext context = currentClientCtx.computeIfAbsent(ctx, key -> new CurrentContext());
+        CurrentContext context = session(ctx);
+        if (context.busy) {
+            context.deferred.add(msg);
+            return;
+        }
+        dispatch(ctx, msg, context);
+    }
 
-        //обработка сообщения в зависимости от состояния
+    //обработка сообщения в зависимости от состояния; время обработки учитывается в ServerMetrics
+    private void dispatch(ChannelHandlerContext ctx, String msg, CurrentContext context) {
+        State state = context.state;
+        //шаг диалога может сбросить раздел и голосование, для события они запоминаются до обработки
+        String dialogueTopic = context.currentTopic;
+        String dialogueVote = context.voteName;
+        //JFR-событие; пока запись JFR не включена, isEnabled() - false и событие ничего не стоит
+        CommandEvent event = new CommandEvent();
+        CommitBarrier replies = event.isEnabled() ? replyCounter(ctx) : null;
+        event.begin();
+        long start = System.nanoTime();
+        handle(ctx, msg, context);
+        long elapsed = System.nanoTime() - start;
+        if (state == State.MENU) {
+            ServerMetrics.INSTANCE.command(context.commandLine.getCommand(), elapsed);
+        } else {
+            ServerMetrics.INSTANCE.input(state, elapsed);
+        }
+        event.end();
+        long responseBytes = replies == null ? 0 : replies.stopCounting();
+        if (event.shouldCommit()) {
+            if (state == State.MENU) {
+                CommandLine command = context.commandLine;
+                event.command = command.getCommand().name().toLowerCase(Locale.ROOT);
+                event.topic = command.getTopic();
+                event.vote = command.getVote();
+            } else {
+                event.command = state.name();
+                event.topic = dialogueTopic;
+                event.vote = dialogueVote;
+            }
+            event.user = context.name;
+            event.responseBytes = responseBytes;
+            event.commit();
+        }
+    }
+
+    //ответы считает CommitBarrier: он стоит сразу за обработчиком и видит каждую запись
+    private static CommitBarrier replyCounter(ChannelHandlerContext ctx) {
+        ChannelPipeline pipeline = ctx.pipeline();
+        CommitBarrier barrier = pipeline == null ? null : pipeline.get(CommitBarrier.class);
+        if (barrier != null) {
+            barrier.startCounting();
+        }
+        return barrier;
+    }
+
+    private void handle(ChannelHandlerContext ctx, String msg, CurrentContext context) {
         switch(context.state){
             case MENU:
                 handleCommand(ctx, msg, context);
@@ -514,29 +809,65 @@ public class ServerHandler extends SimpleChannelInboundHandler<String> {
         System.out.println("Клиент подключен: " + ctx.channel().remoteAddress());
     }
 
+    //результаты голосований, пропущенные, пока клиент не читал
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (ctx.channel().isWritable()) {
+            VoteWatchers.resume(ctx.channel());
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
     //обработка отключения клиента
     @Override
     public void channelInactive(ChannelHandlerContext ctx){
-        CurrentContext context = currentClientCtx.get(ctx);
-
+        CurrentContext context = endSession(ctx);
         if(context != null && context.isLogin){
-            ServerApp.logoutUser(context.name);
             log.info("Клиент {} (пользователь {}) отключен", ctx.channel().remoteAddress(), context.name);
             System.out.println("Соединение с пользователем " + context.name + " разорвано");
         }
-
-        currentClientCtx.remove(ctx);
-        ctx.close();
+        ctx.fireChannelInactive();
     }
 
-    //обработка ошибок
+    //обработка ошибок: кроме слишком длинной команды, соединение закрывается, а сессия завершается сразу
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause){
-        CurrentContext context = currentClientCtx.get(ctx);
+        if (cause instanceof TooLongFrameException) {
+            // строка уже отброшена декодером, соединение можно продолжать использовать
+            log.warn("Слишком длинная команда от {}: {}", ctx.channel().remoteAddress(), cause.getMessage());
+            ctx.writeAndFlush("Слишком длинная команда\n");
+            return;
+        }
+        CurrentContext context = endSession(ctx);
         if (context != null && context.isLogin) {
             log.error("Ошибка у пользователя {}: {}", context.name, cause.getMessage(), cause);
         } else {
             log.error("Ошибка: {}", cause.getMessage(), cause);
         }
+        ctx.close();
+    }
+
+    //состояние клиента; создается при первой команде
+    private static CurrentContext session(ChannelHandlerContext ctx) {
+        Attribute<CurrentContext> attribute = ctx.channel().attr(SESSION);
+        CurrentContext context = attribute.get();
+        if (context == null) {
+            context = new CurrentContext();
+            attribute.set(context);
+            ServerMetrics.INSTANCE.sessionOpened();
+        }
+        return context;
+    }
+
+    //снимает состояние с канала и освобождает имя пользователя; повторный вызов ничего не делает
+    private static CurrentContext endSession(ChannelHandlerContext ctx) {
+        CurrentContext context = ctx.channel().attr(SESSION).getAndSet(null);
+        if (context != null) {
+            ServerMetrics.INSTANCE.sessionClosed(context.state);
+        }
+        if (context != null && context.isLogin) {
+            ServerApp.logoutUser(context.name);
+        }
+        return context;
     }
 }
@@ -0,0 +1,93 @@
+package com.samarina.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Конвейер обработки подключения. Протокол выбирается по первому байту:
+ * BinaryProtocol.MAGIC - бинарные кадры, иначе текстовые команды, одна строка - одна команда.
+ * Если задана группа handlerGroup, обработчики команд выполняются в ней, а не в потоке Netty.
+ * Ответы на все команды, прочитанные за один раз, уходят в сокет одним flush.
+ */
+public class ServerInitializer extends ChannelInitializer<Channel> {
+    private static final Logger log = LoggerFactory.getLogger(ServerInitializer.class);
+
+    private final int maxLineLength;
+    private final EventExecutorGroup handlerGroup;
+
+    public ServerInitializer(int maxLineLength) {
+        this(maxLineLength, null);
+    }
+
+    public ServerInitializer(int maxLineLength, EventExecutorGroup handlerGroup) {
+        this.maxLineLength = maxLineLength;
+        this.handlerGroup = handlerGroup;
+    }
+
+    @Override
+    protected void initChannel(Channel ch) {
+        //flush обработчиков откладывается до конца чтения; вне чтения (ответ после записи журнала) - до следующей задачи цикла
+        ch.pipeline().addLast(
+                new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true),
+                BackPressure.INSTANCE,
+                new ProtocolSelector());
+        log.info("Новое подключение: {}", ch.remoteAddress());
+    }
+
+    private void addTextHandlers(ChannelPipeline pipeline) {
+        pipeline.addLast(
+                new LineBasedFrameDecoder(maxLineLength),
+                new StringDecoder(CharsetUtil.UTF_8),
+                new StringEncoder(CharsetUtil.UTF_8));
+        addCommandHandlers(pipeline, ServerHandler.INSTANCE);
+    }
+
+    private void addBinaryHandlers(ChannelPipeline pipeline) {
+        pipeline.addLast(
+                new LengthFieldBasedFrameDecoder(BinaryProtocol.MAX_FRAME_LENGTH, 0, 2, 0, 2),
+                new LengthFieldPrepender(2));
+        addCommandHandlers(pipeline, new BinaryHandler());
+    }
+
+    //CommitBarrier должен работать в том же потоке, что и обработчик: ожидание записи в журнал
+    //передается ему через ThreadLocal. Оба попадают к одному исполнителю группы на все время соединения
+    private void addCommandHandlers(ChannelPipeline pipeline, ChannelHandler handler) {
+        pipeline.addLast(handlerGroup, new CommitBarrier(), handler);
+    }
+
+    //смотрит на первый байт соединения, достраивает конвейер и удаляет себя
+    private class ProtocolSelector extends ByteToMessageDecoder {
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+            if (!in.isReadable()) {
+                return;
+            }
+            if (in.getByte(in.readerIndex()) == BinaryProtocol.MAGIC) {
+                in.skipBytes(1);
+                addBinaryHandlers(ctx.pipeline());
+                log.info("Бинарный протокол: {}", ctx.channel().remoteAddress());
+            } else {
+                addTextHandlers(ctx.pipeline());
+            }
+            // оставшиеся байты передаются дальше по конвейеру при удалении декодера
+            ctx.pipeline().remove(this);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.samarina.server;
+
+import com.samarina.metrics.LatencyHistogram;
+import com.samarina.server.CommandLine.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Счетчики сервера: число и время выполнения команд (по командам меню и по шагам диалога создания голосования
+ * и голосования), число сессий в каждом состоянии, время ожидания записи в журнал до ответа клиенту.
+ * Запись без блокировок и без выделения памяти. Доступны командой stats и через JMX (ServerMetricsMXBean).
+ */
+public final class ServerMetrics implements ServerMetricsMXBean {
+    private static final Logger log = LoggerFactory.getLogger(ServerMetrics.class);
+
+    public static final String OBJECT_NAME = "com.samarina.voting:type=ServerMetrics";
+
+    private static final Command[] COMMANDS = Command.values();
+    private static final State[] STATES = State.values();
+
+    public static final ServerMetrics INSTANCE = new ServerMetrics();
+
+    private final long startNanos = System.nanoTime();
+    //время команды меню по Command.ordinal(), время ответа в диалоге по State.ordinal() (MENU не используется)
+    private final LatencyHistogram[] commands = new LatencyHistogram[COMMANDS.length];
+    private final LatencyHistogram[] inputs = new LatencyHistogram[STATES.length];
+    private final LatencyHistogram commitWait = new LatencyHistogram();
+    private final LongAdder[] sessions = new LongAdder[STATES.length];
+
+    private ServerMetrics() {
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < STATES.length; i++) {
+            inputs[i] = new LatencyHistogram();
+            sessions[i] = new LongAdder();
+        }
+    }
+
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            log.warn("Не удалось зарегистрировать метрики в JMX: {}", e.getMessage());
+        }
+    }
+
+    void command(Command command, long nanos) {
+        commands[command.ordinal()].record(nanos);
+    }
+
+    void input(State state, long nanos) {
+        inputs[state.ordinal()].record(nanos);
+    }
+
+    void commitWait(long nanos) {
+        commitWait.record(nanos);
+    }
+
+    void sessionOpened() {
+        sessions[State.MENU.ordinal()].increment();
+    }
+
+    void sessionMoved(State from, State to) {
+        sessions[from.ordinal()].decrement();
+        sessions[to.ordinal()].increment();
+    }
+
+    void sessionClosed(State state) {
+        sessions[state.ordinal()].decrement();
+    }
+
+    @Override
+    public long getUptimeSeconds() {
+        return (System.nanoTime() - startNanos) / 1_000_000_000L;
+    }
+
+    @Override
+    public long getActiveSessions() {
+        long total = 0;
+        for (LongAdder adder : sessions) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getLoggedInUsers() {
+        return ServerApp.getActiveUsers().size();
+    }
+
+    @Override
+    public long getCommandCount() {
+        long total = 0;
+        for (LatencyHistogram histogram : commands) {
+            total += histogram.count();
+        }
+        for (LatencyHistogram histogram : inputs) {
+            total += histogram.count();
+        }
+        return total;
+    }
+
+    @Override
+    public double getCommandsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0 : getCommandCount() / seconds;
+    }
+
+    @Override
+    public Map<String, Long> getSessionsByState() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (State state : STATES) {
+            result.put(state.name(), sessions[state.ordinal()].sum());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        return collect(LatencyHistogram::count);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP50Micros() {
+        return collect(histogram -> histogram.percentile(50) / 1000);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP99Micros() {
+        return collect(histogram -> histogram.percentile(99) / 1000);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMaxMicros() {
+        return collect(histogram -> histogram.max() / 1000);
+    }
+
+    @Override
+    public long getCommitWaitP99Micros() {
+        return commitWait.percentile(99) / 1000;
+    }
+
+    @Override
+    public void resetLatencies() {
+        for (LatencyHistogram histogram : commands) {
+            histogram.reset();
+        }
+        for (LatencyHistogram histogram : inputs) {
+            histogram.reset();
+        }
+        commitWait.reset();
+    }
+
+    //отчет для команды stats
+    String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "Работает %d с, выполнено %d команд, %.1f команд/с\n",
+                getUptimeSeconds(), getCommandCount(), getCommandsPerSecond()));
+        report.append("Сессий: ").append(getActiveSessions()).append(", авторизовано: ").append(getLoggedInUsers()).append('\n');
+        for (State state : STATES) {
+            report.append("  ").append(state.name()).append(": ").append(sessions[state.ordinal()].sum()).append('\n');
+        }
+        report.append("команда              кол-во      среднее     p50       p99       max (мкс)\n");
+        for (Command command : COMMANDS) {
+            line(report, command.name().toLowerCase(Locale.ROOT), commands[command.ordinal()]);
+        }
+        for (State state : STATES) {
+            line(report, state.name(), inputs[state.ordinal()]);
+        }
+        line(report, "COMMIT_WAIT", commitWait);
+        return report.toString();
+    }
+
+    private static void line(StringBuilder report, String name, LatencyHistogram histogram) {
+        if (histogram.count() == 0) {
+            return;
+        }
+        report.append(String.format(Locale.ROOT, "%-20s %8d %10.1f %9.1f %9.1f %9.1f\n", name, histogram.count(),
+                histogram.mean() / 1000.0,
+                histogram.percentile(50) / 1000.0,
+                histogram.percentile(99) / 1000.0,
+                histogram.max() / 1000.0));
+    }
+
+    //значения по командам меню и по шагам диалога; пустые пропускаются
+    private Map<String, Long> collect(ToLongFunction<LatencyHistogram> value) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Command command : COMMANDS) {
+            LatencyHistogram histogram = commands[command.ordinal()];
+            if (histogram.count() > 0) {
+                result.put(command.name().toLowerCase(Locale.ROOT), value.applyAsLong(histogram));
+            }
+        }
+        for (State state : STATES) {
+            LatencyHistogram histogram = inputs[state.ordinal()];
+            if (histogram.count() > 0) {
+                result.put(state.name(), value.applyAsLong(histogram));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,33 @@
+package com.samarina.server;
+
+import java.util.Map;
+
+//метрики сервера в JMX (jconsole, VisualVM): com.samarina.voting:type=ServerMetrics
+public interface ServerMetricsMXBean {
+    long getUptimeSeconds();
+
+    long getActiveSessions();
+
+    long getLoggedInUsers();
+
+    long getCommandCount();
+
+    double getCommandsPerSecond();
+
+    //число текстовых сессий в каждом состоянии: MENU, WAITING_FOR_NAME, ..., WAITING_FOR_VOTE
+    Map<String, Long> getSessionsByState();
+
+    //по командам меню (login, view, ...) и по шагам диалога (WAITING_FOR_NAME, ...)
+    Map<String, Long> getCommandCounts();
+
+    Map<String, Long> getLatencyP50Micros();
+
+    Map<String, Long> getLatencyP99Micros();
+
+    Map<String, Long> getLatencyMaxMicros();
+
+    //сколько ответ ждет записи изменения в журнал на диск
+    long getCommitWaitP99Micros();
+
+    void resetLatencies();
+}
@@ -0,0 +1,30 @@
+package com.samarina.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//JFR-событие на запись или чтение снимка: save, load, снимок по расписанию и восстановление при запуске
+@Name("com.samarina.voting.Snapshot")
+@Label("Snapshot")
+@Category("Voting")
+@Description("Snapshot written or read by ServerApp")
+@StackTrace(false)
+final class SnapshotEvent extends jdk.jfr.Event {
+    //save, checkpoint, load или recover
+    @Label("Operation")
+    String operation;
+
+    @Label("File")
+    String file;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Topics")
+    int topics;
+}
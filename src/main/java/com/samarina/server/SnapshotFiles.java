@@ -0,0 +1,26 @@
+package com.samarina.server;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+//снимок пишется во временный файл рядом с целевым и атомарно подменяет его, так что файл всегда целый
+final class SnapshotFiles {
+    private SnapshotFiles() {
+    }
+
+    static Path createTemp(Path target) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        return Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+    }
+
+    static void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.samarina.server;
+
+import com.samarina.model.Ballots;
+import com.samarina.model.Topic;
+import com.samarina.model.Vote;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Замороженный вид всего состояния для записи снимка. Снимается одним быстрым проходом по разделам:
+ * для каждого голосования запоминается только длина его журнала голосов (Vote.ballots()), без копирования.
+ * Дальше снимок пишется из этого вида в своем потоке, пока обработчики продолжают менять состояние.
+ */
+final class StateView {
+    static final class TopicView {
+        final String name;
+        final List<VoteView> votes;
+
+        TopicView(String name, List<VoteView> votes) {
+            this.name = name;
+            this.votes = votes;
+        }
+    }
+
+    static final class VoteView {
+        final String name;
+        final String description;
+        final String creator;
+        final List<String> options;
+        final Ballots ballots;
+
+        VoteView(Vote vote) {
+            this.name = vote.getName();
+            this.description = vote.getDescription();
+            this.creator = vote.getCreator();
+            this.options = vote.optionNames();
+            this.ballots = vote.ballots();
+        }
+    }
+
+    final List<TopicView> topics;
+    private final long ballots;
+
+    private StateView(List<TopicView> topics, long ballots) {
+        this.topics = topics;
+        this.ballots = ballots;
+    }
+
+    static StateView capture(Collection<Topic> topics) {
+        List<TopicView> views = new ArrayList<>(topics.size());
+        long ballots = 0;
+        for (Topic topic : topics) {
+            List<VoteView> votes = new ArrayList<>(topic.getAllVotes().size());
+            for (Vote vote : topic.getAllVotes().values()) {
+                VoteView view = new VoteView(vote);
+                ballots += view.ballots.total();
+                votes.add(view);
+            }
+            views.add(new TopicView(topic.getName(), votes));
+        }
+        return new StateView(views, ballots);
+    }
+
+    long ballots() {
+        return ballots;
+    }
+}
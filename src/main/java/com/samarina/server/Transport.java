@@ -0,0 +1,55 @@
+package com.samarina.server;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Сетевой транспорт сервера: нативный epoll на Linux, если он доступен, иначе NIO.
+ * Тип серверного канала определяется по группе, поэтому bootstrap работает с группами любого транспорта.
+ */
+public final class Transport {
+    private static final Logger log = LoggerFactory.getLogger(Transport.class);
+
+    private Transport() {
+    }
+
+    //auto - epoll, если доступен; epoll - только epoll (ошибка, если недоступен); nio - всегда NIO
+    public static boolean useEpoll(String mode) {
+        switch (mode) {
+            case "auto":
+                if (!Epoll.isAvailable()) {
+                    log.info("Транспорт epoll недоступен, используется NIO: {}", Epoll.unavailabilityCause().toString());
+                }
+                return Epoll.isAvailable();
+            case "epoll":
+                Epoll.ensureAvailability();
+                return true;
+            case "nio":
+                return false;
+            default:
+                throw new IllegalArgumentException("Неизвестный транспорт: " + mode);
+        }
+    }
+
+    //threads = 0 - число потоков по умолчанию Netty (два на ядро)
+    public static EventLoopGroup group(boolean epoll, int threads, String name) {
+        DefaultThreadFactory factory = new DefaultThreadFactory(name);
+        return epoll ? new EpollEventLoopGroup(threads, factory) : new NioEventLoopGroup(threads, factory);
+    }
+
+    static Class<? extends ServerChannel> serverChannel(EventLoopGroup group) {
+        return group instanceof EpollEventLoopGroup ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    static boolean isEpoll(EventLoopGroup group) {
+        return group instanceof EpollEventLoopGroup;
+    }
+}
@@ -0,0 +1,186 @@
+package com.samarina.server;
+
+import com.samarina.model.Vote;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Подписки на голосования (команда watch). Каждый засчитанный голос только отмечает голосование измененным;
+ * не чаще раза в ServerConfig.WATCH_INTERVAL мс текущие результаты кодируются один раз (ResponseCache)
+ * и рассылаются всем подписчикам через ChannelGroup одним буфером. Закрытые подключения группа удаляет сама,
+ * голосование перестает отслеживаться, как только у него не остается подписчиков (unwatch или отключение)
+ * или когда его удаляют либо заменяют загрузкой данных; в последних двух случаях подписчики получают уведомление.
+ * Подключению, которое сейчас недоступно для записи (клиент не читает, см. BackPressure), рассылка не пишет,
+ * а только отмечает голосование отстающим; когда подключение снова доступно, ему уходят последние результаты.
+ */
+final class VoteWatchers {
+    private static final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("watch", true));
+    private static final Map<Vote, Watch> watches = new ConcurrentHashMap<>();
+
+    //подписки подключения, рассылки которых пропущены, пока оно было недоступно для записи
+    private static final AttributeKey<Set<Watch>> LAGGING = AttributeKey.valueOf(VoteWatchers.class, "lagging");
+
+    private VoteWatchers() {
+    }
+
+    //подключение снова доступно для записи: отправляет последние результаты пропущенных голосований
+    static void resume(Channel channel) {
+        Set<Watch> lagging = channel.attr(LAGGING).get();
+        if (lagging == null) {
+            return;
+        }
+        for (Watch watch : lagging) {
+            watch.catchUp(channel);
+        }
+    }
+
+    private static Set<Watch> lagging(Channel channel) {
+        Set<Watch> lagging = channel.attr(LAGGING).get();
+        if (lagging == null) {
+            Set<Watch> created = ConcurrentHashMap.newKeySet();
+            lagging = channel.attr(LAGGING).setIfAbsent(created);
+            if (lagging == null) {
+                lagging = created;
+            }
+        }
+        return lagging;
+    }
+
+    static void subscribe(Vote vote, Channel channel) {
+        while (true) {
+            Watch watch = watches.computeIfAbsent(vote, Watch::new);
+            synchronized (watch) {
+                if (!watch.closed) {
+                    if (watch.subscribers.add(channel)) {
+                        channel.closeFuture().addListener(future -> watch.unsubscribe(channel));
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    //true, если подключение было подписано
+    static boolean unsubscribe(Vote vote, Channel channel) {
+        Watch watch = watches.get(vote);
+        return watch != null && watch.unsubscribe(channel);
+    }
+
+    //голосование удалено: подписка на него заканчивается
+    static void voteDeleted(Vote vote) {
+        Watch watch = watches.get(vote);
+        if (watch != null) {
+            watch.close("Голосование " + vote.getName() + " удалено, подписка отменена\n");
+        }
+    }
+
+    //load заменил все разделы: старые голосования больше не меняются
+    static void topicsReplaced() {
+        for (Watch watch : watches.values()) {
+            watch.close("Данные загружены заново, подписка на голосование " + watch.vote.getName() + " отменена\n");
+        }
+    }
+
+    static int subscribers(Vote vote) {
+        Watch watch = watches.get(vote);
+        return watch == null ? 0 : watch.subscribers.size();
+    }
+
+    private static final class Watch {
+        final Vote vote;
+        final ChannelGroup subscribers = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        //рассылка уже запланирована; следующие голоса до нее ничего не делают
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        boolean closed;
+
+        Watch(Vote vote) {
+            this.vote = vote;
+            vote.setListener(this::changed);
+        }
+
+        private void changed() {
+            if (scheduled.compareAndSet(false, true)) {
+                scheduler.schedule(this::push, ServerConfig.WATCH_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void push() {
+            // голоса, пришедшие во время рассылки, запланируют следующую
+            scheduled.set(false);
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+            }
+            subscribers.writeAndFlush(response(), this::writable);
+        }
+
+        private boolean unsubscribe(Channel channel) {
+            boolean removed = subscribers.remove(channel);
+            synchronized (this) {
+                if (!closed && subscribers.isEmpty()) {
+                    close(null);
+                }
+            }
+            return removed;
+        }
+
+        //notice - уведомление оставшимся подписчикам или null
+        private synchronized void close(String notice) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            vote.setListener(null);
+            watches.remove(vote, this);
+            for (Channel channel : subscribers) {
+                Set<Watch> lagging = channel.attr(LAGGING).get();
+                if (lagging != null) {
+                    lagging.remove(this);
+                }
+            }
+            if (notice != null) {
+                subscribers.writeAndFlush(notice);
+            }
+            subscribers.clear();
+        }
+
+        private ByteBuf response() {
+            return ResponseCache.vote(vote, () -> ServerHandler.renderVote(vote));
+        }
+
+        //недоступное для записи подключение пропускается и получит результаты в catchUp
+        private boolean writable(Channel channel) {
+            if (channel.isWritable()) {
+                return true;
+            }
+            lagging(channel).add(this);
+            // подключение могло освободиться до отметки, и resume ее уже не увидел
+            if (channel.isWritable()) {
+                catchUp(channel);
+            }
+            return false;
+        }
+
+        private void catchUp(Channel channel) {
+            Set<Watch> lagging = channel.attr(LAGGING).get();
+            if (lagging != null && lagging.remove(this) && subscribers.contains(channel)) {
+                channel.writeAndFlush(response());
+            }
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.samarina.server;
+
+import com.samarina.model.Vote;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал изменений состояния (write-ahead log). Каждое изменение дописывается в конец текущего сегмента
+ * data/wal/NNNNNNNNNNNN.wal записью [i32 длина][i32 CRC32C][данные]; строки - [i32 длина][UTF-8].
+ *
+ * TOPIC_CREATED topic
+ * VOTE_CREATED  topic vote description creator [i32 n] n*option
+ * BALLOT_CAST   topic vote [i32 номер варианта] user
+ * VOTE_DELETED  topic vote
+ *
+ * Групповая фиксация: записи копятся в буфере, пока поток записи занят предыдущим fsync,
+ * и уходят на диск одним write + force. Каждая запись получает future, который завершается после fsync.
+ */
+public final class WriteAheadLog implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final byte TOPIC_CREATED = 1;
+    private static final byte VOTE_CREATED = 2;
+    private static final byte BALLOT_CAST = 3;
+    private static final byte VOTE_DELETED = 4;
+    private static final int HEADER = 8;
+    private static final String SUFFIX = ".wal";
+
+    //последняя запись, добавленная текущим потоком; по ней CommitBarrier придерживает ответ клиенту
+    private static final ThreadLocal<CompletableFuture<Void>> LAST_APPEND = new ThreadLocal<>();
+
+    //применяет записи журнала к состоянию при восстановлении
+    public interface Replay {
+        void topicCreated(String topic);
+
+        void voteCreated(String topic, String vote, String description, String creator, List<String> options);
+
+        void ballotCast(String topic, String vote, int option, String user);
+
+        void voteDeleted(String topic, String vote);
+    }
+
+    private final Path directory;
+    private final Object lock = new Object();
+    //буфер, в который сейчас дописываются записи; защищен lock
+    private Batch filling = new Batch();
+    private Batch spare = new Batch();
+    private int recordStart;
+    //текущий сегмент; защищен блокировкой самого канала записи (io)
+    private final Object io = new Object();
+    private FileChannel channel;
+    private long segment;
+    private boolean closed;
+    //ошибка записи на диск; защищена lock. После нее сегмент может кончаться оборванной записью,
+    //поэтому журнал больше ничего не дописывает, а новые записи сразу завершаются этой ошибкой
+    private IOException failure;
+    private final Thread writer;
+
+    private static final class Batch {
+        final ByteBuf data = Unpooled.buffer(64 * 1024);
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+    }
+
+    private WriteAheadLog(Path directory, long segment) throws IOException {
+        this.directory = directory;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+        this.writer = new Thread(this::writeLoop, "wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    //новый сегмент всегда начинается после последнего существующего, старые сегменты не дописываются
+    public static WriteAheadLog open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segments = segments(directory);
+        long next = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+        return new WriteAheadLog(directory, next);
+    }
+
+    public CompletableFuture<Void> topicCreated(String topic) {
+        synchronized (lock) {
+            if (failure != null) {
+                return rejected();
+            }
+            ByteBuf out = begin(TOPIC_CREATED);
+            writeString(out, topic);
+            return end();
+        }
+    }
+
+    public CompletableFuture<Void> voteCreated(String topic, Vote vote) {
+        List<String> options = vote.optionNames();
+        synchronized (lock) {
+            if (failure != null) {
+                return rejected();
+            }
+            ByteBuf out = begin(VOTE_CREATED);
+            writeString(out, topic);
+            writeString(out, vote.getName());
+            writeString(out, vote.getDescription());
+            writeString(out, vote.getCreator());
+            out.writeInt(options.size());
+            for (String option : options) {
+                writeString(out, option);
+            }
+            return end();
+        }
+    }
+
+    public CompletableFuture<Void> ballotCast(String topic, String vote, int option, String user) {
+        synchronized (lock) {
+            if (failure != null) {
+                return rejected();
+            }
+            ByteBuf out = begin(BALLOT_CAST);
+            writeString(out, topic);
+            writeString(out, vote);
+            out.writeInt(option);
+            writeString(out, user);
+            return end();
+        }
+    }
+
+    public CompletableFuture<Void> voteDeleted(String topic, String vote) {
+        synchronized (lock) {
+            if (failure != null) {
+                return rejected();
+            }
+            ByteBuf out = begin(VOTE_DELETED);
+            writeString(out, topic);
+            writeString(out, vote);
+            return end();
+        }
+    }
+
+    //незавершенная запись, добавленная текущим потоком, или null, если ждать нечего; сбрасывает отметку
+    static CompletableFuture<Void> takePending() {
+        CompletableFuture<Void> pending = LAST_APPEND.get();
+        if (pending == null) {
+            return null;
+        }
+        LAST_APPEND.set(null);
+        return pending.isDone() && !pending.isCompletedExceptionally() ? null : pending;
+    }
+
+    private CompletableFuture<Void> rejected() {
+        CompletableFuture<Void> rejected = CompletableFuture.failedFuture(failure);
+        LAST_APPEND.set(rejected);
+        return rejected;
+    }
+
+    private ByteBuf begin(byte type) {
+        if (closed) {
+            throw new IllegalStateException("Журнал закрыт");
+        }
+        ByteBuf out = filling.data;
+        recordStart = out.writerIndex();
+        out.writeZero(HEADER);
+        out.writeByte(type);
+        return out;
+    }
+
+    private CompletableFuture<Void> end() {
+        ByteBuf out = filling.data;
+        int length = out.writerIndex() - recordStart - HEADER;
+        CRC32C crc = new CRC32C();
+        crc.update(out.nioBuffer(recordStart + HEADER, length));
+        out.setInt(recordStart, length);
+        out.setInt(recordStart + 4, (int) crc.getValue());
+        lock.notifyAll();
+        CompletableFuture<Void> committed = filling.committed;
+        LAST_APPEND.set(committed);
+        return committed;
+    }
+
+    private static void writeString(ByteBuf out, String value) {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        int length = out.writeCharSequence(value, CharsetUtil.UTF_8);
+        out.setInt(lengthIndex, length);
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Batch batch;
+            synchronized (lock) {
+                while (!filling.data.isReadable() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (!filling.data.isReadable()) {
+                    return;
+                }
+                batch = filling;
+                filling = spare;
+            }
+
+            try {
+                synchronized (io) {
+                    ByteBuffer buffer = batch.data.nioBuffer();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                }
+                batch.committed.complete(null);
+            } catch (IOException e) {
+                log.error("Ошибка записи журнала изменений, журнал остановлен: {}", e.getMessage(), e);
+                Batch appended;
+                synchronized (lock) {
+                    failure = e;
+                    appended = filling;
+                }
+                batch.committed.completeExceptionally(e);
+                //записи, добавленные во время неудачной записи, тоже не попадут на диск
+                appended.committed.completeExceptionally(e);
+                return;
+            }
+
+            batch.data.clear();
+            batch.committed = new CompletableFuture<>();
+            synchronized (lock) {
+                spare = batch;
+            }
+        }
+    }
+
+    //переключает запись на новый сегмент и возвращает его номер; сегменты с меньшими номерами
+    //можно удалить, как только сохранен снимок, сделанный после переключения
+    public long rotate() throws IOException {
+        synchronized (io) {
+            channel.force(false);
+            channel.close();
+            segment++;
+            channel = openSegment(segment);
+            return segment;
+        }
+    }
+
+    public void deleteBefore(long keep) throws IOException {
+        for (long number : segments(directory)) {
+            if (number < keep) {
+                Files.deleteIfExists(segmentPath(directory, number));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (io) {
+            channel.close();
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    //применяет все сегменты по порядку. Оборванная запись (сбой во время записи) бывает только в конце последнего
+    //сегмента и отбрасывается; предыдущие сегменты перед переключением записаны на диск целиком, поэтому
+    //испорченная запись в них - повреждение журнала, и восстановление останавливается, а не пропускает записи
+    public static void replay(Path directory, Replay replay) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Long> segments = segments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segmentPath(directory, segments.get(i));
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.BIG_ENDIAN);
+            int records = 0;
+            while (data.remaining() >= HEADER) {
+                int start = data.position();
+                int length = data.getInt();
+                int checksum = data.getInt();
+                if (length <= 0 || length > data.remaining() || checksum != crc(data, data.position(), length)) {
+                    data.position(start);
+                    break;
+                }
+                ByteBuffer record = data.slice(data.position(), length);
+                data.position(data.position() + length);
+                apply(record, replay);
+                records++;
+            }
+            if (data.hasRemaining() && i < segments.size() - 1) {
+                throw new IOException("Сегмент журнала " + path.getFileName() + " поврежден: испорченная запись на позиции "
+                        + data.position() + ", за ним есть более новые сегменты");
+            }
+            if (data.hasRemaining()) {
+                log.warn("Сегмент журнала {} оборван, отброшено {} байт", path.getFileName(), data.remaining());
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(data.position());
+                }
+            }
+            log.info("Из сегмента журнала {} применено записей: {}", path.getFileName(), records);
+        }
+    }
+
+    private static void apply(ByteBuffer record, Replay replay) {
+        byte type = record.get();
+        switch (type) {
+            case TOPIC_CREATED:
+                replay.topicCreated(readString(record));
+                break;
+            case VOTE_CREATED: {
+                String topic = readString(record);
+                String vote = readString(record);
+                String description = readString(record);
+                String creator = readString(record);
+                int count = record.getInt();
+                List<String> options = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    options.add(readString(record));
+                }
+                replay.voteCreated(topic, vote, description, creator, options);
+                break;
+            }
+            case BALLOT_CAST:
+                replay.ballotCast(readString(record), readString(record), record.getInt(), readString(record));
+                break;
+            case VOTE_DELETED:
+                replay.voteDeleted(readString(record), readString(record));
+                break;
+            default:
+                log.warn("Неизвестный тип записи журнала: {}", type);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, CharsetUtil.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static int crc(ByteBuffer data, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .forEach(name -> {
+                        try {
+                            numbers.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                        } catch (NumberFormatException e) {
+                            log.warn("Посторонний файл в папке журнала: {}", name);
+                        }
+                    });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("%012d%s", number, SUFFIX));
+    }
+}
@@ -0,0 +1,109 @@
+import com.samarina.model.Topic;
+import com.samarina.model.Vote;
+import com.samarina.server.BallotImport;
+import com.samarina.server.ServerApp;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BallotImportTest {
+    @TempDir
+    Path directory;
+
+    private Vote vote;
+
+    @BeforeEach
+    void setUp() {
+        ServerApp.getTopics().clear();
+        Topic topic = new Topic("city");
+        vote = new Vote("best city", "desc", List.of("Moscow", "Saint Petersburg"), "creator");
+        topic.addVote(vote);
+        ServerApp.getTopics().put("city", topic);
+    }
+
+    @Test
+    void testCsvImport() throws IOException {
+        Path file = write("ballots.csv", "topic,vote,option,user\n" +
+                "city,best city,Moscow,user1\r\n" +
+                "city,\"best city\",\"Saint Petersburg\",user2\n" +
+                "city,best city,2,user3\n" +
+                "city,best city,Moscow,user1\n" +
+                "city,missing,Moscow,user4\n" +
+                "city,best city,Kazan,user5\n" +
+                "city,best city\n" +
+                "\n" +
+                "city,best city,Moscow,user6");
+
+        BallotImport.Report report = BallotImport.run(file);
+
+        assertEquals(8, report.rows());
+        assertEquals(4, report.accepted());
+        assertEquals(1, report.duplicates());
+        assertEquals(2, report.unknown());
+        assertEquals(1, report.invalid());
+        assertEquals(2, vote.count("Moscow"));
+        assertEquals(2, vote.count("Saint Petersburg"));
+        assertEquals("Moscow", vote.choiceOf("user1"));
+    }
+
+    @Test
+    void testNdjsonImport() throws IOException {
+        Path file = write("ballots.ndjson",
+                "{\"topic\": \"city\", \"vote\": \"best city\", \"option\": \"Moscow\", \"user\": \"user1\"}\n" +
+                "{\"topic\": \"city\", \"vote\": \"best city\", \"option\": 2, \"user\": \"user2\", \"source\": {\"paper\": true}}\n" +
+                "{\"topic\": \"city\", \"vote\": \"best city\"\n");
+
+        BallotImport.Report report = BallotImport.run(file);
+
+        assertEquals(3, report.rows());
+        assertEquals(2, report.accepted());
+        assertEquals(1, report.invalid());
+        assertEquals("Saint Petersburg", vote.choiceOf("user2"));
+    }
+
+    @Test
+    void testSmallChunksKeepEveryLine() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("city,best city,").append(i % 3 == 0 ? "Moscow" : "Saint Petersburg").append(",voter").append(i).append('\n');
+        }
+        // блок меньше всего файла, но больше любой строки: строки разрезаются на границах блоков
+        BallotImport.Report report = BallotImport.run(write("many.csv", content.toString()), 100);
+
+        assertEquals(5000, report.rows());
+        assertEquals(5000, report.accepted());
+        assertEquals(1667, vote.count("Moscow"));
+        assertEquals(3333, vote.count("Saint Petersburg"));
+    }
+
+    @Test
+    void testLargeChunkIsSplitBetweenTasks() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append("{\"topic\":\"city\",\"vote\":\"best city\",\"option\":1,\"user\":\"voter").append(i).append("\"}\n");
+        }
+        // один блок в сотни килобайт разбирается несколькими задачами; порядок строк сохраняется
+        BallotImport.Report report = BallotImport.run(write("many.ndjson", content.toString()));
+
+        assertEquals(20000, report.accepted());
+        assertEquals(20000, vote.count("Moscow"));
+    }
+
+    @Test
+    void testLineLongerThanChunkIsRejected() throws IOException {
+        Path file = write("long.csv", "city,best city,Moscow,user1\ncity,best city,Moscow," + "u".repeat(200) + "\n");
+        assertThrows(IOException.class, () -> BallotImport.run(file, 64));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,205 @@
+import com.samarina.model.Vote;
+import com.samarina.server.BinaryProtocol;
+import com.samarina.server.Result;
+import com.samarina.server.ServerApp;
+import com.samarina.server.ServerInitializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryProtocolTest {
+    private EmbeddedChannel channel;
+    private ByteBuf received;
+
+    @BeforeEach
+    void setUp() {
+        ServerApp.getTopics().clear();
+        ServerApp.getActiveUsers().clear();
+        channel = new EmbeddedChannel(new ServerInitializer(64));
+        received = Unpooled.buffer();
+        channel.writeInbound(Unpooled.wrappedBuffer(new byte[]{BinaryProtocol.MAGIC}));
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+        received.release();
+    }
+
+    @Test
+    void testCreateVoteAndCountBallots() {
+        assertEquals(Result.OK, send(BinaryProtocol.LOGIN, "kiosk"));
+        assertEquals(Result.OK, send(BinaryProtocol.CREATE_TOPIC, "topic"));
+
+        ByteBuf createVote = frame(BinaryProtocol.CREATE_VOTE, "topic", "vote", "question?");
+        createVote.writeByte(2);
+        BinaryProtocol.writeString(createVote, "yes");
+        BinaryProtocol.writeString(createVote, "no");
+        assertEquals(Result.OK, send(createVote));
+
+        assertEquals(Result.OK, send(vote("topic", "vote", 1)));
+        assertEquals(Result.ALREADY_VOTED, send(vote("topic", "vote", 0)));
+        assertEquals(Result.INVALID_OPTION, send(vote("topic", "vote", 7)));
+
+        ByteBuf view = sendAndRead(frame(BinaryProtocol.VIEW, "topic", "vote"));
+        assertEquals(BinaryProtocol.VIEW, view.readByte());
+        assertEquals(Result.OK.ordinal(), view.readUnsignedByte());
+        assertEquals(2, view.readUnsignedShort());
+        assertEquals("yes", BinaryProtocol.readString(view));
+        assertEquals(0, view.readLong());
+        assertEquals("no", BinaryProtocol.readString(view));
+        assertEquals(1, view.readLong());
+
+        assertEquals(1, ServerApp.getTopics().get("topic").getVote("vote").count("no"));
+    }
+
+    @Test
+    void testCommandsRequireLogin() {
+        assertEquals(Result.NOT_LOGGED_IN, send(BinaryProtocol.CREATE_TOPIC, "topic"));
+        assertTrue(ServerApp.getTopics().isEmpty());
+    }
+
+    @Test
+    void testErrorsAreReportedAsStatus() {
+        send(BinaryProtocol.LOGIN, "kiosk");
+        assertEquals(Result.TOPIC_NOT_FOUND, send(vote("missing", "vote", 0)));
+        assertEquals(Result.TOPIC_NOT_FOUND, send(BinaryProtocol.DELETE, "missing", "vote"));
+        assertEquals(Result.BAD_REQUEST, send(Unpooled.buffer().writeByte(42)));
+
+        // обрезанный кадр не рвет соединение
+        assertEquals(Result.BAD_REQUEST, send(Unpooled.buffer().writeByte(BinaryProtocol.VOTE).writeShort(10)));
+        assertEquals(Result.OK, send(BinaryProtocol.CREATE_TOPIC, "topic"));
+    }
+
+    @Test
+    void testPipelinedFramesInOnePacket() {
+        ByteBuf packet = Unpooled.buffer();
+        appendFrame(packet, frame(BinaryProtocol.LOGIN, "kiosk"));
+        appendFrame(packet, frame(BinaryProtocol.CREATE_TOPIC, "first"));
+        appendFrame(packet, frame(BinaryProtocol.CREATE_TOPIC, "first"));
+        channel.writeInbound(packet);
+
+        assertEquals(Result.OK, readStatus());
+        assertEquals(Result.OK, readStatus());
+        assertEquals(Result.ALREADY_EXISTS, readStatus());
+    }
+
+    @Test
+    void testDuplicateOptionsAreRejected() {
+        send(BinaryProtocol.LOGIN, "kiosk");
+        send(BinaryProtocol.CREATE_TOPIC, "topic");
+
+        ByteBuf createVote = frame(BinaryProtocol.CREATE_VOTE, "topic", "vote", "question?");
+        createVote.writeByte(3);
+        BinaryProtocol.writeString(createVote, "yes");
+        BinaryProtocol.writeString(createVote, "no");
+        BinaryProtocol.writeString(createVote, "yes");
+        assertEquals(Result.BAD_REQUEST, send(createVote));
+        assertNull(ServerApp.getTopics().get("topic").getVote("vote"));
+    }
+
+    @Test
+    void testEmptyNamesAreRejected() {
+        send(BinaryProtocol.LOGIN, "kiosk");
+        assertEquals(Result.BAD_REQUEST, send(BinaryProtocol.CREATE_TOPIC, ""));
+        assertTrue(ServerApp.getTopics().isEmpty());
+        send(BinaryProtocol.CREATE_TOPIC, "topic");
+
+        ByteBuf emptyVote = frame(BinaryProtocol.CREATE_VOTE, "topic", "", "question?");
+        emptyVote.writeByte(1);
+        BinaryProtocol.writeString(emptyVote, "yes");
+        assertEquals(Result.BAD_REQUEST, send(emptyVote));
+
+        ByteBuf emptyOption = frame(BinaryProtocol.CREATE_VOTE, "topic", "vote", "question?");
+        emptyOption.writeByte(2);
+        BinaryProtocol.writeString(emptyOption, "yes");
+        BinaryProtocol.writeString(emptyOption, "");
+        assertEquals(Result.BAD_REQUEST, send(emptyOption));
+        assertTrue(ServerApp.getTopics().get("topic").getAllVotes().isEmpty());
+    }
+
+    @Test
+    void testViewTooLargeForFrame() {
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            options.add(i + "x".repeat(1000));
+        }
+        ServerApp.createTopic("topic");
+        ServerApp.createVote("topic", new Vote("vote", "desc", options, "creator"));
+        send(BinaryProtocol.LOGIN, "kiosk");
+
+        ByteBuf view = sendAndRead(frame(BinaryProtocol.VIEW, "topic", "vote"));
+        assertEquals(BinaryProtocol.VIEW, view.readByte());
+        assertEquals(Result.TOO_LARGE.ordinal(), view.readUnsignedByte());
+        assertFalse(view.isReadable());
+
+        // соединение продолжает работать
+        assertEquals(Result.OK, send(BinaryProtocol.CREATE_TOPIC, "another"));
+    }
+
+    @Test
+    void testLoginNameIsShared() {
+        ServerApp.loginUser("taken");
+        assertEquals(Result.ALREADY_EXISTS, send(BinaryProtocol.LOGIN, "taken"));
+    }
+
+    private static ByteBuf frame(byte opcode, String... strings) {
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(opcode);
+        for (String s : strings) {
+            BinaryProtocol.writeString(buf, s);
+        }
+        return buf;
+    }
+
+    private static ByteBuf vote(String topic, String vote, int option) {
+        return frame(BinaryProtocol.VOTE, topic, vote).writeShort(option);
+    }
+
+    private static void appendFrame(ByteBuf packet, ByteBuf frame) {
+        packet.writeShort(frame.readableBytes()).writeBytes(frame);
+        frame.release();
+    }
+
+    private Result send(byte opcode, String... strings) {
+        return send(frame(opcode, strings));
+    }
+
+    private Result send(ByteBuf frame) {
+        ByteBuf response = sendAndRead(frame);
+        response.readByte();
+        return Result.values()[response.readUnsignedByte()];
+    }
+
+    private ByteBuf sendAndRead(ByteBuf frame) {
+        ByteBuf packet = Unpooled.buffer();
+        appendFrame(packet, frame);
+        channel.writeInbound(packet);
+        return readFrame();
+    }
+
+    private Result readStatus() {
+        ByteBuf response = readFrame();
+        response.readByte();
+        return Result.values()[response.readUnsignedByte()];
+    }
+
+    //собирает исходящие буферы и выделяет из них следующий кадр ответа
+    private ByteBuf readFrame() {
+        ByteBuf buf;
+        while ((buf = channel.readOutbound()) != null) {
+            received.writeBytes(buf);
+            buf.release();
+        }
+        int length = received.readUnsignedShort();
+        return received.readSlice(length);
+    }
+}
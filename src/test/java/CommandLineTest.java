@@ -0,0 +1,85 @@
+import com.samarina.server.CommandLine;
+import com.samarina.server.CommandLine.Command;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandLineTest {
+    private final CommandLine commandLine = new CommandLine();
+
+    @Test
+    void testCommandAndOptions() {
+        commandLine.parse("vote -t=topic -v=vote");
+        assertEquals(Command.VOTE, commandLine.getCommand());
+        assertEquals("topic", commandLine.getTopic());
+        assertEquals("vote", commandLine.getVote());
+        assertNull(commandLine.getUser());
+        assertNull(commandLine.getTarget());
+    }
+
+    @Test
+    void testTargetWord() {
+        commandLine.parse("create topic -n=news");
+        assertEquals(Command.CREATE, commandLine.getCommand());
+        assertEquals("topic", commandLine.getTarget());
+        assertEquals("news", commandLine.getName());
+
+        commandLine.parse("save data.json");
+        assertEquals(Command.SAVE, commandLine.getCommand());
+        assertEquals("data.json", commandLine.getTarget());
+    }
+
+    @Test
+    void testEmptyAndMissingValues() {
+        commandLine.parse("login -u=");
+        assertEquals("", commandLine.getUser());
+
+        commandLine.parse("login -u");
+        assertEquals("", commandLine.getUser());
+
+        commandLine.parse("login");
+        assertNull(commandLine.getUser());
+    }
+
+    @Test
+    void testStateIsResetBetweenLines() {
+        commandLine.parse("view -t=topic -v=vote");
+        commandLine.parse("view");
+        assertEquals(Command.VIEW, commandLine.getCommand());
+        assertNull(commandLine.getTopic());
+        assertNull(commandLine.getVote());
+    }
+
+    @Test
+    void testUnknownCommand() {
+        assertEquals(Command.UNKNOWN, commandLine.parse("nocommand").getCommand());
+        assertEquals(Command.UNKNOWN, commandLine.parse("").getCommand());
+        assertEquals(Command.UNKNOWN, commandLine.parse("LOGIN -u=user").getCommand());
+        assertEquals(Command.UNKNOWN, commandLine.parse("views").getCommand());
+    }
+
+    @Test
+    void testRepeatedSpaces() {
+        commandLine.parse("  delete   -t=topic  -v=vote ");
+        assertEquals(Command.DELETE, commandLine.getCommand());
+        assertEquals("topic", commandLine.getTopic());
+        assertEquals("vote", commandLine.getVote());
+    }
+
+    @Test
+    void testQuotedValues() {
+        commandLine.parse("create vote -t=topic -v=\"best city\" -d=\"where to  go\" -o=a,b,c");
+        assertEquals("topic", commandLine.getTopic());
+        assertEquals("best city", commandLine.getVote());
+        assertEquals("where to  go", commandLine.getDescription());
+        assertEquals("a,b,c", commandLine.getOptions());
+
+        commandLine.parse("vote -d=\"\" -o=2");
+        assertEquals("", commandLine.getDescription());
+        assertEquals("2", commandLine.getOptions());
+
+        // без закрывающей кавычки значение - до конца строки
+        commandLine.parse("create vote -d=\"no end");
+        assertEquals("no end", commandLine.getDescription());
+    }
+}
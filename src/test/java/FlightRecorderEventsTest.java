@@ -0,0 +1,64 @@
+import com.samarina.server.ServerApp;
+import com.samarina.server.ServerInitializer;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightRecorderEventsTest {
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        ServerApp.getTopics().clear();
+        ServerApp.getActiveUsers().clear();
+    }
+
+    @Test
+    void testCommandAndSnapshotEvents() throws Exception {
+        Path dump = directory.resolve("events.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.samarina.voting.Command").withThreshold(Duration.ZERO);
+            recording.enable("com.samarina.voting.Snapshot");
+            recording.start();
+
+            EmbeddedChannel channel = new EmbeddedChannel(new ServerInitializer(8192));
+            channel.writeInbound(Unpooled.copiedBuffer("login -u=recorded\ncreate topic -n=jfr\n", CharsetUtil.UTF_8));
+            channel.finishAndReleaseAll();
+            ServerApp.save("jfr-events.json");
+
+            recording.stop();
+            recording.dump(dump);
+        } finally {
+            new File("data", "jfr-events.json").delete();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        RecordedEvent create = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.samarina.voting.Command"))
+                .filter(event -> "create".equals(event.getString("command")))
+                .findFirst().orElseThrow();
+        assertEquals("recorded", create.getString("user"));
+        assertTrue(create.getLong("responseBytes") > 0);
+
+        RecordedEvent save = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.samarina.voting.Snapshot"))
+                .findFirst().orElseThrow();
+        assertEquals("save", save.getString("operation"));
+        assertEquals("jfr-events.json", save.getString("file"));
+        assertTrue(save.getLong("size") > 0);
+    }
+}
@@ -0,0 +1,43 @@
+import com.samarina.metrics.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    void testSmallValuesAreExact() {
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(50, histogram.percentile(50));
+        assertEquals(99, histogram.percentile(99));
+        assertEquals(100, histogram.percentile(100));
+        assertEquals(100, histogram.max());
+        assertEquals(50.5, histogram.mean(), 1e-9);
+    }
+
+    @Test
+    void testLargeValuesWithinRelativeError() {
+        long[] values = {1_000, 123_456, 9_999_999, 5_000_000_000L};
+        for (long value : values) {
+            LatencyHistogram single = new LatencyHistogram();
+            single.record(value);
+            single.record(Long.MAX_VALUE / 2);
+            long p50 = single.percentile(50);
+            assertTrue(p50 >= value, "p50 " + p50 + " < " + value);
+            assertTrue(p50 - value <= value / 60, "p50 " + p50 + " далеко от " + value);
+        }
+    }
+
+    @Test
+    void testReset() {
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(99));
+    }
+}
@@ -1,8 +1,15 @@
 import com.samarina.model.Topic;
+import com.samarina.model.Vote;
 import com.samarina.server.ServerApp;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -51,4 +58,64 @@ class ServerAppTest {
         assertFalse(ServerApp.getTopics().isEmpty());
         assertTrue(ServerApp.getTopics().containsKey("testTopic"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSaveAndLoadVotes() {
+        Map<String, List<String>> options = new LinkedHashMap<>();
+        options.put("yes", List.of("alice", "bob"));
+        options.put("no", List.of("carol"));
+        Topic topic = new Topic("roundTrip");
+        topic.addVote(new Vote("vote", "desc", options, "creator"));
+        ServerApp.getTopics().put("roundTrip", topic);
+        ServerApp.save("roundtrip.json");
+
+        Map<String, Topic> before = ServerApp.getTopics();
+        ServerApp.load("roundtrip.json");
+        assertNotSame(before, ServerApp.getTopics());
+
+        Vote loaded = ServerApp.getTopics().get("roundTrip").getVote("vote");
+        assertEquals("desc", loaded.getDescription());
+        assertEquals("creator", loaded.getCreator());
+        assertEquals(List.of("yes", "no"), loaded.optionNames());
+        assertEquals(2, loaded.count("yes"));
+        assertEquals("no", loaded.choiceOf("carol"));
+        new File("data", "roundtrip.json").delete();
+    }
+
+    @Test
+    void testBrokenFileKeepsCurrentData() throws IOException {
+        Files.writeString(Path.of("data", "broken.json"), "{\"topics\": [ {\"name\": \"x\", \"allVotes\": ");
+        ServerApp.getTopics().put("current", new Topic("current"));
+
+        ServerApp.load("broken.json");
+        assertTrue(ServerApp.getTopics().containsKey("current"));
+        assertFalse(ServerApp.getTopics().containsKey("x"));
+        Files.delete(Path.of("data", "broken.json"));
+    }
+
+    @Test
+    void testBinarySnapshotRoundTrip() {
+        Map<String, List<String>> options = new LinkedHashMap<>();
+        options.put("yes", List.of("alice", "bob"));
+        options.put("no", List.of("carol"));
+        Topic topic = new Topic("binary");
+        topic.addVote(new Vote("vote", null, options, "creator"));
+        topic.addVote(new Vote("empty", "desc", Map.of("only", List.of()), "alice"));
+        ServerApp.getTopics().put("binary", topic);
+        ServerApp.save("roundtrip.bin");
+
+        ServerApp.getTopics().clear();
+        ServerApp.load("roundtrip.bin");
+
+        Topic loaded = ServerApp.getTopics().get("binary");
+        Vote vote = loaded.getVote("vote");
+        assertNull(vote.getDescription());
+        assertEquals(List.of("yes", "no"), vote.optionNames());
+        assertEquals(2, vote.count("yes"));
+        assertEquals("yes", vote.choiceOf("bob"));
+        assertEquals("no", vote.choiceOf("carol"));
+        assertEquals(0, loaded.getVote("empty").totalVotes());
+        assertEquals("alice", loaded.getVote("empty").getCreator());
+        new File("data", "roundtrip.bin").delete();
+    }
+}
@@ -0,0 +1,145 @@
+import com.samarina.model.Topic;
+import com.samarina.model.Vote;
+import com.samarina.server.ServerApp;
+import com.samarina.server.ServerHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ServerConcurrencyTest {
+
+    @BeforeEach
+    void setUp() {
+        ServerApp.getTopics().clear();
+        ServerApp.getActiveUsers().clear();
+    }
+
+    @Test
+    void testConcurrentVotesAreAllCounted() throws Exception {
+        int threads = 8;
+        int votesPerThread = 5_000;
+        for (int t = 0; t < threads; t++) {
+            Topic topic = new Topic("topic" + t);
+            topic.addVote(new Vote("vote", "desc", Map.of("a", List.of(), "b", List.of()), "creator"));
+            ServerApp.getTopics().put(topic.getName(), topic);
+        }
+        Topic shared = new Topic("shared");
+        shared.addVote(new Vote("vote", "desc", Map.of("a", List.of(), "b", List.of()), "creator"));
+        ServerApp.getTopics().put("shared", shared);
+
+        runInParallel(threads, t -> {
+            Vote own = ServerApp.getTopics().get("topic" + t).getVote("vote");
+            Vote common = ServerApp.getTopics().get("shared").getVote("vote");
+            for (int i = 0; i < votesPerThread; i++) {
+                own.vote(i % 2 == 0 ? "a" : "b", "user" + t + "_" + i);
+                common.vote(i % 2 == 0 ? "a" : "b", "user" + t + "_" + i);
+            }
+        });
+
+        for (int t = 0; t < threads; t++) {
+            Map<String, List<String>> options = ServerApp.getTopics().get("topic" + t).getVote("vote").getOptions();
+            assertEquals(votesPerThread, options.get("a").size() + options.get("b").size());
+        }
+        Map<String, List<String>> options = shared.getVote("vote").getOptions();
+        assertEquals(threads * votesPerThread, options.get("a").size() + options.get("b").size());
+    }
+
+    @Test
+    void testBusyVoteDoesNotBlockOtherTopics() throws Exception {
+        Topic busy = new Topic("busy");
+        Vote busyVote = new Vote("vote", "desc", Map.of("a", List.of()), "creator");
+        busy.addVote(busyVote);
+        ServerApp.getTopics().put("busy", busy);
+        Topic quiet = new Topic("quiet");
+        quiet.addVote(new Vote("vote", "desc", Map.of("a", List.of()), "creator"));
+        ServerApp.getTopics().put("quiet", quiet);
+
+        TestableServerHandler handler = new TestableServerHandler();
+        ChannelHandlerContext busyCtx = mock(ChannelHandlerContext.class);
+        when(busyCtx.channel()).thenReturn(new EmbeddedChannel());
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(new EmbeddedChannel());
+
+        // голос в busy останавливается посреди castVote: слушатель голосования вызывается в потоке голосующего
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        busyVote.setListener(() -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> busyFuture = executor.submit(() -> {
+                handler.processCommand(busyCtx, "login -u=busyUser");
+                handler.processCommand(busyCtx, "vote -t=busy -v=vote -o=1");
+            });
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            // пока голос в busy не завершен, работа с разделом quiet не должна ждать
+            Future<?> future = executor.submit(() -> {
+                handler.processCommand(ctx, "login -u=user");
+                handler.processCommand(ctx, "view -t=quiet -v=vote");
+                handler.processCommand(ctx, "vote -t=quiet -v=vote");
+                handler.processCommand(ctx, "1");
+                handler.processCommand(ctx, "create topic -n=another");
+            });
+            future.get(5, TimeUnit.SECONDS);
+            assertFalse(busyFuture.isDone());
+
+            release.countDown();
+            busyFuture.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        verify(busyCtx).writeAndFlush(contains("Ваш голос засчитан"));
+        assertEquals(List.of("busyUser"), busyVote.getOptions().get("a"));
+        verify(ctx).writeAndFlush(contains("Ваш голос засчитан"));
+        verify(ctx).writeAndFlush(contains("Создан новый раздел another"));
+        assertEquals(List.of("user"), quiet.getVote("vote").getOptions().get("a"));
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runInParallel(int threads, Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    worker.run(thread);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class TestableServerHandler extends ServerHandler {
+        void processCommand(ChannelHandlerContext ctx, String msg) {
+            channelRead0(ctx, msg);
+        }
+    }
+}
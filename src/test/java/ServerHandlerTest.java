@@ -1,8 +1,26 @@
+import com.samarina.model.Vote;
 import com.samarina.server.ServerApp;
 import com.samarina.server.ServerHandler;
+import com.samarina.server.ServerMetrics;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.Mockito.*;
 
 class ServerHandlerTest {
@@ -12,7 +30,7 @@ class ServerHandlerTest {
     @BeforeEach
     void setUp() {
         handler = new TestableServerHandler();
-        mockCtx = mock(ChannelHandlerContext.class);
+        mockCtx = mockContext();
         ServerApp.getTopics().clear();
         ServerApp.getActiveUsers().clear();
     }
@@ -93,7 +111,32 @@ class ServerHandlerTest {
     @Test
     void testLoadNonExistentFile() {
         handler.processCommand(mockCtx, "load nonexistent.json");
-        verify(mockCtx).writeAndFlush(contains("Ошибка загрузки из файла"));
+        // загрузка выполняется вне потока обработчика, ответ приходит асинхронно
+        verify(mockCtx, timeout(2000)).writeAndFlush(contains("Ошибка загрузки из файла"));
+    }
+
+    @Test
+    void testImportRequiresLoginAndPlainFileName() throws Exception {
+        handler.processCommand(mockCtx, "import ballots.csv");
+        verify(mockCtx).writeAndFlush(contains("Для выполнения команды import необходимо авторизоваться"));
+
+        handler.processCommand(mockCtx, "login -u=user");
+        handler.processCommand(mockCtx, "import ../ballots.csv");
+        handler.processCommand(mockCtx, "import sub/ballots.csv");
+        handler.processCommand(mockCtx, "import ..");
+        verify(mockCtx, times(3)).writeAndFlush("Имя файла не должно содержать путь: import <filename>\n");
+
+        handler.processCommand(mockCtx, "create topic -n=testTopic");
+        handler.processCommand(mockCtx, "create vote -t=testTopic -v=testVote -o=yes,no");
+        // точки внутри имени файла - не переход в родительский каталог
+        File file = new File("data", "import..test.csv");
+        Files.writeString(file.toPath(), "testTopic,testVote,yes,voter1\ntestTopic,testVote,no,voter2\n");
+        try {
+            handler.processCommand(mockCtx, "import import..test.csv");
+            verify(mockCtx, timeout(2000)).writeAndFlush(contains("засчитано 2"));
+        } finally {
+            file.delete();
+        }
     }
 
     @Test
@@ -132,7 +175,9 @@ class ServerHandlerTest {
         handler.processCommand(mockCtx, "login -u=user");
         handler.processCommand(mockCtx, "create topic -t=testTopic");
         handler.processCommand(mockCtx, "view");
-        verify(mockCtx, times(1)).writeAndFlush(contains("Текущий список разделов"));
+        // список разделов отправляется готовым буфером из кэша ответов
+        verify(mockCtx, times(1)).writeAndFlush(argThat(reply -> reply instanceof ByteBuf
+                && ((ByteBuf) reply).toString(CharsetUtil.UTF_8).contains("Текущий список разделов")));
     }
 
     @Test
@@ -149,6 +194,44 @@ class ServerHandlerTest {
         verify(mockCtx, atLeastOnce()).writeAndFlush(contains("Вы перешли к голосованию"));
     }
 
+    @Test
+    void testCreateVoteAndVoteInOneCommand() {
+        handler.processCommand(mockCtx, "login -u=user");
+        handler.processCommand(mockCtx, "create topic -n=testTopic");
+        handler.processCommand(mockCtx, "create vote -t=testTopic -v=testVote -d=\"question?\" -o=answer1,answer2");
+        verify(mockCtx).writeAndFlush("Новый раздел голосования успешно создан\n");
+
+        Vote vote = ServerApp.getTopics().get("testTopic").getVote("testVote");
+        assertEquals("question?", vote.getDescription());
+        assertEquals(List.of("answer1", "answer2"), vote.optionNames());
+
+        handler.processCommand(mockCtx, "vote -t=testTopic -v=testVote -o=2");
+        verify(mockCtx).writeAndFlush("Ваш голос засчитан в голосовании\n");
+        assertEquals(1, vote.getOptions().get("answer2").size());
+
+        handler.processCommand(mockCtx, "vote -t=testTopic -v=testVote -o=1");
+        verify(mockCtx).writeAndFlush("Вы уже голосовали в этом голосовании.\n");
+    }
+
+    @Test
+    void testOneShotCommandsValidateParameters() {
+        handler.processCommand(mockCtx, "login -u=user");
+        handler.processCommand(mockCtx, "create topic -n=testTopic");
+        handler.processCommand(mockCtx, "create vote -t=testTopic -v=testVote -o=yes,,no");
+        verify(mockCtx).writeAndFlush("Варианты ответа не должны быть пустыми или повторяться\n");
+        handler.processCommand(mockCtx, "create vote -t=testTopic -v=testVote");
+        verify(mockCtx).writeAndFlush(contains("Укажите раздел, название и варианты ответа"));
+        assertTrue(ServerApp.getTopics().get("testTopic").getAllVotes().isEmpty());
+
+        handler.processCommand(mockCtx, "create vote -t=testTopic -v=testVote -o=yes,no");
+        handler.processCommand(mockCtx, "vote -t=testTopic -v=testVote -o=3");
+        handler.processCommand(mockCtx, "vote -t=testTopic -v=testVote -o=x");
+        verify(mockCtx, times(2)).writeAndFlush("Введите число от 1 до 2\n");
+        // после неверного номера сессия остается в меню
+        handler.processCommand(mockCtx, "vote -t=testTopic -v=testVote -o=1");
+        verify(mockCtx).writeAndFlush("Ваш голос засчитан в голосовании\n");
+    }
+
     @Test
     void testHandleDeleteVote() {
         handler.processCommand(mockCtx, "login -u=user");
@@ -176,9 +259,9 @@ class ServerHandlerTest {
         handler.processCommand(mockCtx, "answer2");
         handler.processCommand(mockCtx, "answer3");
         handler.processCommand(mockCtx, "save testdata.json");
-        verify(mockCtx, atLeastOnce()).writeAndFlush(contains("Данные успешно сохранены"));
+        verify(mockCtx, timeout(2000).atLeastOnce()).writeAndFlush(contains("Данные успешно сохранены"));
         handler.processCommand(mockCtx, "load testdata.json");
-        verify(mockCtx, atLeastOnce()).writeAndFlush(contains("Данные успешно загружены"));
+        verify(mockCtx, timeout(2000).atLeastOnce()).writeAndFlush(contains("Данные успешно загружены"));
     }
 
     @Test
@@ -187,6 +270,123 @@ class ServerHandlerTest {
         verify(mockCtx, times(1)).writeAndFlush(contains("Неизвестная команда. Введите 'help' для вывода списка команд"));
     }
 
+    @Test
+    void testCommandsWaitForSave() {
+        handler.processCommand(mockCtx, "login -u=user");
+        handler.processCommand(mockCtx, "save ordering.json");
+        handler.processCommand(mockCtx, "create topic -n=afterSave");
+
+        // команда, пришедшая во время сохранения, выполняется и отвечает после него
+        InOrder inOrder = inOrder(mockCtx);
+        inOrder.verify(mockCtx, timeout(2000)).writeAndFlush(contains("Данные успешно сохранены"));
+        inOrder.verify(mockCtx, timeout(2000)).writeAndFlush(contains("Создан новый раздел afterSave"));
+        new File("data", "ordering.json").delete();
+    }
+
+    @Test
+    void testCommandsWaitForSeveralSaves() {
+        handler.processCommand(mockCtx, "login -u=user");
+        handler.processCommand(mockCtx, "save ordering1.json");
+        handler.processCommand(mockCtx, "save ordering2.json");
+        handler.processCommand(mockCtx, "create topic -n=afterSaves");
+
+        // вторая фоновая операция из очереди не должна терять команды, стоящие за ней
+        InOrder inOrder = inOrder(mockCtx);
+        inOrder.verify(mockCtx, timeout(2000)).writeAndFlush(contains("Данные успешно сохранены в файл ordering1.json"));
+        inOrder.verify(mockCtx, timeout(2000)).writeAndFlush(contains("Данные успешно сохранены в файл ordering2.json"));
+        inOrder.verify(mockCtx, timeout(2000)).writeAndFlush(contains("Создан новый раздел afterSaves"));
+        new File("data", "ordering1.json").delete();
+        new File("data", "ordering2.json").delete();
+    }
+
+    @Test
+    void testDeferredCommandsAreDroppedAfterDisconnect() throws Exception {
+        // чтение из именованного канала ждет писателя: import остается незавершенным, пока тест его не отпустит
+        File fifo = new File("data", "blocking-import.csv");
+        fifo.delete();
+        assumeTrue(new ProcessBuilder("mkfifo", fifo.getPath()).start().waitFor() == 0, "Нужен mkfifo");
+        try {
+            handler.processCommand(mockCtx, "login -u=user");
+            handler.processCommand(mockCtx, "import blocking-import.csv");
+            handler.processCommand(mockCtx, "create topic -n=afterDisconnect");
+            handler.channelInactive(mockCtx);
+            mockCtx.channel().close();
+
+            new FileOutputStream(fifo).close();
+            verify(mockCtx, timeout(2000)).writeAndFlush(contains("Импорт из файла blocking-import.csv"));
+            Thread.sleep(100);
+            assertFalse(ServerApp.getTopics().containsKey("afterDisconnect"));
+            assertTrue(ServerApp.getActiveUsers().isEmpty());
+        } finally {
+            fifo.delete();
+        }
+    }
+
+    @Test
+    void testSessionsAreKeptPerChannel() {
+        ChannelHandlerContext otherCtx = mockContext();
+        handler.processCommand(mockCtx, "login -u=first");
+        handler.processCommand(otherCtx, "login -u=second");
+        handler.processCommand(otherCtx, "create topic -n=shared");
+
+        verify(mockCtx).writeAndFlush(contains("Login: first"));
+        verify(otherCtx).writeAndFlush(contains("Login: second"));
+        verify(otherCtx).writeAndFlush(contains("Создан новый раздел shared"));
+    }
+
+    @Test
+    void testErrorEndsSession() {
+        handler.processCommand(mockCtx, "login -u=user");
+        handler.exceptionCaught(mockCtx, new IllegalStateException("test"));
+
+        verify(mockCtx).close();
+        assertFalse(ServerApp.getActiveUsers().contains("user"));
+        // имя освобождено, новое подключение может им воспользоваться
+        ChannelHandlerContext otherCtx = mockContext();
+        handler.processCommand(otherCtx, "login -u=user");
+        verify(otherCtx).writeAndFlush(contains("Вы вошли в систему. Login: user"));
+    }
+
+    @Test
+    void testStatsCountCommandsAndSessionStates() {
+        ServerMetrics metrics = ServerMetrics.INSTANCE;
+        long creating = metrics.getSessionsByState().get("WAITING_FOR_NAME");
+        long logins = metrics.getCommandCounts().getOrDefault("login", 0L);
+
+        handler.processCommand(mockCtx, "login -u=user");
+        handler.processCommand(mockCtx, "create topic -n=testTopic");
+        handler.processCommand(mockCtx, "create vote -t=testTopic");
+        assertEquals(creating + 1, metrics.getSessionsByState().get("WAITING_FOR_NAME"));
+        assertEquals(logins + 1, metrics.getCommandCounts().get("login"));
+
+        ChannelHandlerContext adminCtx = mockContext();
+        handler.processCommand(adminCtx, "stats");
+        verify(adminCtx).writeAndFlush(contains("Для выполнения команды stats необходимо авторизоваться"));
+        handler.processCommand(adminCtx, "login -u=admin");
+        handler.processCommand(adminCtx, "stats");
+        verify(adminCtx).writeAndFlush(contains("WAITING_FOR_NAME: " + (creating + 1)));
+
+        handler.exceptionCaught(mockCtx, new IllegalStateException("test"));
+        assertEquals(creating, metrics.getSessionsByState().get("WAITING_FOR_NAME"));
+    }
+
+    @Test
+    void testMetricsAreExportedToJmx() throws Exception {
+        ServerMetrics.register();
+        handler.processCommand(mockCtx, "help");
+
+        Object count = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName(ServerMetrics.OBJECT_NAME), "CommandCount");
+        assertTrue((Long) count > 0);
+    }
+
+    //у каждого контекста свой канал: состояние клиента хранится в атрибутах канала
+    private static ChannelHandlerContext mockContext() {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(new EmbeddedChannel());
+        return ctx;
+    }
+
     private static class TestableServerHandler extends ServerHandler { // получаем обработчик команд
         void processCommand(ChannelHandlerContext ctx, String msg) {
             channelRead0(ctx, msg);
@@ -0,0 +1,179 @@
+import com.samarina.model.Vote;
+import com.samarina.server.ServerApp;
+import com.samarina.server.ServerInitializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerInitializerTest {
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        ServerApp.getTopics().clear();
+        ServerApp.getActiveUsers().clear();
+        channel = new EmbeddedChannel(new ServerInitializer(64));
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testPipelinedCommandsInOnePacket() {
+        channel.writeInbound(text("login -u=user\ncreate topic -n=first\nview\n"));
+
+        assertTrue(readResponse().contains("Вы вошли в систему. Login: user"));
+        assertTrue(readResponse().contains("Создан новый раздел first"));
+        assertTrue(readResponse().contains("Текущий список разделов"));
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    void testCommandSplitAcrossPackets() {
+        channel.writeInbound(text("login -u=us"));
+        assertNull(channel.readOutbound());
+
+        channel.writeInbound(text("er\r\n"));
+        assertTrue(readResponse().contains("Вы вошли в систему. Login: user"));
+    }
+
+    @Test
+    void testTooLongCommandIsRejected() {
+        channel.writeInbound(text("login -u=" + "x".repeat(100) + "\nlogin -u=user\n"));
+
+        assertTrue(readResponse().contains("Слишком длинная команда"));
+        assertTrue(readResponse().contains("Вы вошли в систему. Login: user"));
+        assertTrue(channel.isActive());
+    }
+
+    @Test
+    void testResponsesAreNewlineTerminated() {
+        channel.writeInbound(text("create topic -n=first\nlogin -u=user\ncreate topic -n=first\ncreate topic -n=first\n"));
+
+        String response;
+        while ((response = readResponse()) != null) {
+            assertTrue(response.endsWith("\n"), response);
+        }
+    }
+
+    @Test
+    void testCachedViewsFollowChanges() {
+        channel.writeInbound(text("login -u=user\ncreate topic -n=first\n"));
+        readResponse();
+        readResponse();
+
+        channel.writeInbound(text("view\n"));
+        assertTrue(readResponse().contains("first (голосований в разделе: 0)"));
+
+        Map<String, List<String>> options = new LinkedHashMap<>();
+        options.put("yes", List.of());
+        options.put("no", List.of());
+        ServerApp.getTopics().get("first").addVote(new Vote("vote", "desc", options, "user"));
+        channel.writeInbound(text("view\nview -t=first\nview -t=first -v=vote\n"));
+        assertTrue(readResponse().contains("first (голосований в разделе: 1)"));
+        assertTrue(readResponse().contains("- vote"));
+        assertTrue(readResponse().contains("- no. Проголосовавших пользователей: 0"));
+
+        channel.writeInbound(text("vote -t=first -v=vote\n2\nview -t=first -v=vote\n"));
+        readResponse();
+        readResponse();
+        assertTrue(readResponse().contains("- no. Проголосовавших пользователей: 1"));
+    }
+
+    @Test
+    void testPipelinedRepliesAreFlushedOnce() {
+        AtomicInteger flushes = new AtomicInteger();
+        channel.pipeline().addFirst(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) {
+                flushes.incrementAndGet();
+                ctx.flush();
+            }
+        });
+
+        channel.writeInbound(text("login -u=user\ncreate topic -n=first\nview\n"));
+
+        assertEquals(1, flushes.get());
+        assertTrue(readResponse().contains("Вы вошли в систему. Login: user"));
+    }
+
+    @Test
+    void testReadingPausedWhileClientIsNotReading() {
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        channel.runPendingTasks();
+        assertFalse(channel.config().isAutoRead());
+
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        channel.runPendingTasks();
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    void testVirtualHandlerGroupKeepsOrder() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        EventExecutorGroup handlerGroup = ServerApp.handlerGroup("virtual", 4);
+        try {
+            Channel server = ServerApp.bootstrap(group, group, handlerGroup).bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) server.localAddress()).getPort())) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write("login -u=user\ncreate topic -n=first\nview\n".getBytes(StandardCharsets.UTF_8));
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+                assertTrue(reader.readLine().contains("Вы вошли в систему. Login: user"));
+                assertTrue(reader.readLine().contains("Создан новый раздел first"));
+                assertTrue(reader.readLine().contains("Текущий список разделов"));
+            }
+            server.close().sync();
+        } finally {
+            handlerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    void testUnknownHandlerExecutorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ServerApp.handlerGroup("threads", 4));
+    }
+
+    private static ByteBuf text(String s) {
+        return Unpooled.copiedBuffer(s, CharsetUtil.UTF_8);
+    }
+
+    private String readResponse() {
+        ByteBuf buf = channel.readOutbound();
+        if (buf == null) {
+            return null;
+        }
+        try {
+            return buf.toString(CharsetUtil.UTF_8);
+        } finally {
+            buf.release();
+        }
+    }
+}
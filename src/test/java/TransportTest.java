@@ -0,0 +1,61 @@
+import com.samarina.server.ServerApp;
+import com.samarina.server.Transport;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TransportTest {
+    @Test
+    void testModes() {
+        assertFalse(Transport.useEpoll("nio"));
+        assertEquals(Epoll.isAvailable(), Transport.useEpoll("auto"));
+        assertThrows(IllegalArgumentException.class, () -> Transport.useEpoll("kqueue"));
+    }
+
+    @Test
+    void testNioGroupGetsNioChannel() throws Exception {
+        EventLoopGroup group = Transport.group(false, 1, "test-nio");
+        assertTrue(group instanceof NioEventLoopGroup);
+        checkServer(group, NioServerSocketChannel.class);
+    }
+
+    @Test
+    void testEpollGroupGetsEpollChannel() throws Exception {
+        assumeTrue(Epoll.isAvailable());
+        checkServer(Transport.group(true, 1, "test-epoll"), EpollServerSocketChannel.class);
+    }
+
+    private static void checkServer(EventLoopGroup group, Class<?> channelType) throws Exception {
+        try {
+            Channel server = ServerApp.bootstrap(group, group, null).bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+            assertEquals(channelType, server.getClass());
+            assertTrue(server.config().getOption(ChannelOption.SO_BACKLOG) > 0);
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) server.localAddress()).getPort())) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write("login -u=transport\n".getBytes(StandardCharsets.UTF_8));
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                assertTrue(reader.readLine().contains("Вы вошли в систему. Login: transport"));
+            }
+            server.close().sync();
+        } finally {
+            ServerApp.getActiveUsers().remove("transport");
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+}
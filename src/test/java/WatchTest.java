@@ -0,0 +1,187 @@
+import com.samarina.model.Topic;
+import com.samarina.model.Vote;
+import com.samarina.server.ServerApp;
+import com.samarina.server.ServerConfig;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatchTest {
+    private static final int VOTE_LINES = 5;
+
+    private EventLoopGroup group;
+    private Channel server;
+    private Vote vote;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        ServerApp.getTopics().clear();
+        ServerApp.getActiveUsers().clear();
+        Topic topic = new Topic("topic");
+        vote = new Vote("vote", "desc", List.of("yes", "no"), "creator");
+        topic.addVote(vote);
+        ServerApp.getTopics().put("topic", topic);
+
+        group = new NioEventLoopGroup(1);
+        server = ServerApp.bootstrap(group, group, null).bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        server.close().sync();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    @Test
+    void testVotesAreCoalescedIntoFewPushes() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) server.localAddress()).getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            out.write("login -u=watcher\nwatch -t=topic -v=vote\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(in.readLine().contains("Вы вошли в систему"));
+            assertTrue(in.readLine().contains("Вы подписаны на голосование vote"));
+            assertTrue(readVote(in).contains("- yes. Проголосовавших пользователей: 0"));
+
+            for (int i = 0; i < 100; i++) {
+                vote.vote(0, "voter" + i);
+            }
+
+            // сотня голосов приходит одним-двумя обновлениями, а не сотней
+            int pushes = 0;
+            String result;
+            do {
+                result = readVote(in);
+                pushes++;
+            } while (!result.contains("- yes. Проголосовавших пользователей: 100"));
+            assertTrue(pushes <= 2, "Обновлений: " + pushes);
+
+            out.write("unwatch -t=topic -v=vote\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(in.readLine().contains("Подписка на голосование vote отменена"));
+        }
+    }
+
+    @Test
+    void testWatcherThatDoesNotReadGetsOnlyLatestResults() throws Exception {
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            options.add("o" + i + "x".repeat(1500));
+        }
+        Vote large = new Vote("large", "desc", options, "creator");
+        ServerApp.getTopics().get("topic").addVote(large);
+        // маленькие буферы сокета: ответы, которые клиент не забирает, копятся в очереди подключения на сервере
+        Channel slowServer = ServerApp.bootstrap(group, group, null)
+                .childOption(ChannelOption.SO_SNDBUF, 4096)
+                .bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(4096);
+            socket.connect(slowServer.localAddress());
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write("login -u=watcher\nwatch -t=topic -v=large\n".getBytes(StandardCharsets.UTF_8));
+
+            // четыре рассылки, пока клиент не читает; каждая больше половины верхней границы очереди
+            for (int i = 1; i <= 4; i++) {
+                large.vote(0, "voter" + i);
+                Thread.sleep(ServerConfig.WATCH_INTERVAL + 300);
+            }
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            int renders = 0;
+            String line;
+            do {
+                line = in.readLine();
+                assertNotNull(line);
+                if (line.startsWith("Голосование large:")) {
+                    renders++;
+                }
+            } while (!(line.startsWith("- o0x") && line.endsWith("пользователей: 4")));
+            // ответ на watch, возможно одна рассылка до заполнения очереди и последние результаты после
+            assertTrue(renders <= 3, "Получено результатов: " + renders);
+        } finally {
+            slowServer.close().sync();
+        }
+    }
+
+    @Test
+    void testDeletedVoteEndsSubscription() throws Exception {
+        int port = ((InetSocketAddress) server.localAddress()).getPort();
+        try (Socket watcher = new Socket(InetAddress.getLoopbackAddress(), port);
+             Socket creator = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            watcher.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(watcher.getInputStream(), StandardCharsets.UTF_8));
+            watcher.getOutputStream().write("login -u=watcher\nwatch -t=topic -v=vote\n".getBytes(StandardCharsets.UTF_8));
+            in.readLine();
+            in.readLine();
+            readVote(in);
+
+            creator.getOutputStream().write("login -u=creator\ndelete -t=topic -v=vote\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("Голосование vote удалено, подписка отменена", in.readLine());
+            assertTrue(watches().isEmpty());
+        }
+    }
+
+    @Test
+    void testWatchIsDroppedWhenLastSubscriberDisconnects() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) server.localAddress()).getPort())) {
+            socket.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            socket.getOutputStream().write("login -u=watcher\nwatch -t=topic -v=vote\n".getBytes(StandardCharsets.UTF_8));
+            in.readLine();
+            in.readLine();
+            assertEquals(1, watches().size());
+        }
+        // без новых голосов подписка снимается по закрытию подключения, а не при следующей рассылке
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!watches().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(watches().isEmpty());
+    }
+
+    @Test
+    void testWatchUnknownVote() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress) server.localAddress()).getPort())) {
+            socket.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            socket.getOutputStream().write("login -u=watcher\nwatch -t=topic -v=missing\n".getBytes(StandardCharsets.UTF_8));
+            in.readLine();
+            assertTrue(in.readLine().contains("Голосование missing не найдено в разделе topic"));
+        }
+    }
+
+    //отслеживаемые голосования (VoteWatchers.watches)
+    private static Map<?, ?> watches() throws ReflectiveOperationException {
+        Field field = Class.forName("com.samarina.server.VoteWatchers").getDeclaredField("watches");
+        field.setAccessible(true);
+        return (Map<?, ?>) field.get(null);
+    }
+
+    private static String readVote(BufferedReader in) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < VOTE_LINES; i++) {
+            lines.append(in.readLine()).append('\n');
+        }
+        return lines.toString();
+    }
+}
@@ -0,0 +1,151 @@
+import com.samarina.model.Vote;
+import com.samarina.server.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReplayInOrder() throws Exception {
+        Map<String, List<String>> options = new LinkedHashMap<>();
+        options.put("yes", List.of());
+        options.put("no", List.of());
+
+        try (WriteAheadLog wal = WriteAheadLog.open(directory)) {
+            wal.topicCreated("topic");
+            wal.voteCreated("topic", new Vote("vote", "desc", options, "creator"));
+            wal.ballotCast("topic", "vote", 1, "user");
+            wal.voteDeleted("topic", "vote").get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of(
+                "topic topic",
+                "vote topic vote desc creator [yes, no]",
+                "ballot topic vote 1 user",
+                "delete topic vote"), replay());
+    }
+
+    @Test
+    void testGroupCommitCompletesEveryRecord() throws Exception {
+        List<CompletableFuture<Void>> commits = new ArrayList<>();
+        try (WriteAheadLog wal = WriteAheadLog.open(directory)) {
+            for (int i = 0; i < 1000; i++) {
+                commits.add(wal.ballotCast("topic", "vote", 0, "user" + i));
+            }
+            CompletableFuture.allOf(commits.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1000, replay().size());
+    }
+
+    @Test
+    void testTornTailIsDropped() throws Exception {
+        try (WriteAheadLog wal = WriteAheadLog.open(directory)) {
+            wal.topicCreated("first");
+            wal.topicCreated("second").get(5, TimeUnit.SECONDS);
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        long size = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        assertEquals(List.of("topic first", "topic second"), replay());
+        assertEquals(size, Files.size(segment));
+    }
+
+    @Test
+    void testCorruptRecordInEarlierSegmentFailsReplay() throws Exception {
+        Path first;
+        try (WriteAheadLog wal = WriteAheadLog.open(directory)) {
+            wal.topicCreated("first");
+            wal.topicCreated("second").get(5, TimeUnit.SECONDS);
+            try (Stream<Path> files = Files.list(directory)) {
+                first = files.findFirst().orElseThrow();
+            }
+            wal.rotate();
+            wal.topicCreated("third").get(5, TimeUnit.SECONDS);
+        }
+        // портим последний байт второй записи первого сегмента
+        byte[] data = Files.readAllBytes(first);
+        data[data.length - 1] ^= 1;
+        Files.write(first, data);
+
+        assertThrows(IOException.class, this::replay);
+        assertEquals(data.length, Files.size(first));
+    }
+
+    @Test
+    void testWriteErrorStopsTheLog() throws Exception {
+        try (WriteAheadLog wal = WriteAheadLog.open(directory)) {
+            wal.topicCreated("first").get(5, TimeUnit.SECONDS);
+            // сегмент становится недоступен для записи, как при ошибке диска
+            Field field = WriteAheadLog.class.getDeclaredField("channel");
+            field.setAccessible(true);
+            ((FileChannel) field.get(wal)).close();
+
+            CompletableFuture<Void> failed = wal.topicCreated("second");
+            assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            // следующие записи не дописываются после возможно оборванной, а сразу отклоняются
+            CompletableFuture<Void> rejected = wal.topicCreated("third");
+            assertTrue(rejected.isCompletedExceptionally());
+        }
+        assertEquals(List.of("topic first"), replay());
+    }
+
+    @Test
+    void testRotateAndDelete() throws Exception {
+        try (WriteAheadLog wal = WriteAheadLog.open(directory)) {
+            wal.topicCreated("old").get(5, TimeUnit.SECONDS);
+            long keep = wal.rotate();
+            wal.topicCreated("new").get(5, TimeUnit.SECONDS);
+            wal.deleteBefore(keep);
+        }
+        assertEquals(List.of("topic new"), replay());
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> events = new ArrayList<>();
+        WriteAheadLog.replay(directory, new WriteAheadLog.Replay() {
+            @Override
+            public void topicCreated(String topic) {
+                events.add("topic " + topic);
+            }
+
+            @Override
+            public void voteCreated(String topic, String vote, String description, String creator, List<String> options) {
+                events.add("vote " + topic + " " + vote + " " + description + " " + creator + " " + options);
+            }
+
+            @Override
+            public void ballotCast(String topic, String vote, int option, String user) {
+                events.add("ballot " + topic + " " + vote + " " + option + " " + user);
+            }
+
+            @Override
+            public void voteDeleted(String topic, String vote) {
+                events.add("delete " + topic + " " + vote);
+            }
+        });
+        return events;
+    }
+}
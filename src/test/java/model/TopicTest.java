@@ -42,6 +42,19 @@ public class TopicTest {
         assertNull(topic.getVote("testVote"));
     }
 
+    @Test
+    void testDeleteVoteInstance() {
+        topic.addVote(vote);
+        Vote recreated = new Vote("testVote", "другое", List.of("a"), "other");
+        topic.addVote(recreated);
+
+        // старый экземпляр уже заменен, удалять под его названием нечего
+        assertFalse(topic.deleteVote(vote));
+        assertSame(recreated, topic.getVote("testVote"));
+        assertTrue(topic.deleteVote(recreated));
+        assertNull(topic.getVote("testVote"));
+    }
+
     @Test
     void testGetNonExistentVote() {
         assertNull(topic.getVote("nonexistent"));
@@ -0,0 +1,39 @@
+package model;
+
+import com.samarina.model.UserRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserRegistryTest {
+
+    @Test
+    void testRegisterReturnsStableId() {
+        int id = UserRegistry.register("registryUser");
+        assertEquals(id, UserRegistry.register("registryUser"));
+        assertEquals(id, UserRegistry.idOf("registryUser"));
+        assertEquals("registryUser", UserRegistry.nameOf(id));
+    }
+
+    @Test
+    void testIdsAreDense() {
+        int first = UserRegistry.register("denseUser1");
+        int second = UserRegistry.register("denseUser2");
+        assertEquals(first + 1, second);
+    }
+
+    @Test
+    void testUnknownUser() {
+        assertEquals(-1, UserRegistry.idOf("neverRegistered"));
+    }
+
+    @Test
+    void testRegistryGrows() {
+        int first = UserRegistry.register("growUser0");
+        for (int i = 1; i < 5_000; i++) {
+            UserRegistry.register("growUser" + i);
+        }
+        assertEquals("growUser0", UserRegistry.nameOf(first));
+        assertEquals("growUser4999", UserRegistry.nameOf(UserRegistry.idOf("growUser4999")));
+    }
+}
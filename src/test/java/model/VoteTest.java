@@ -1,5 +1,7 @@
 package model;
 
+import com.samarina.model.Ballots;
+import com.samarina.model.UserRegistry;
 import com.samarina.model.Vote;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -28,4 +30,88 @@ public class VoteTest {
         assertEquals("creator", vote.getCreator());
         assertEquals(2, vote.getOptions().size());
     }
+
+    @Test
+    void testVoterIndex() {
+        assertFalse(vote.hasVoted("user"));
+        assertNull(vote.choiceOf("user"));
+
+        assertTrue(vote.vote("option1", "user"));
+        assertTrue(vote.hasVoted("user"));
+        assertEquals("option1", vote.choiceOf("user"));
+    }
+
+    @Test
+    void testRepeatedVoteIsRejected() {
+        assertTrue(vote.vote("option1", "user"));
+        assertFalse(vote.vote("option2", "user"));
+        assertEquals("option1", vote.choiceOf("user"));
+        assertEquals(1, vote.getOptions().get("option1").size());
+        assertTrue(vote.getOptions().get("option2").isEmpty());
+    }
+
+    @Test
+    void testVoterIndexRestoredFromOptions() {
+        Map<String, List<String>> options = new HashMap<>();
+        options.put("option1", List.of("alice", "bob"));
+        options.put("option2", List.of("carol"));
+        Vote restored = new Vote("restored", "desc", options, "creator");
+
+        assertEquals("option1", restored.choiceOf("bob"));
+        assertEquals("option2", restored.choiceOf("carol"));
+        assertFalse(restored.vote("option1", "carol"));
+    }
+
+    @Test
+    void testCountsWithoutVoterLists() {
+        vote.vote("option1", "alice");
+        vote.vote("option1", "bob");
+        vote.vote(vote.optionNames().indexOf("option2"), "carol");
+
+        assertEquals(2, vote.count("option1"));
+        assertEquals(1, vote.count("option2"));
+        assertEquals(0, vote.count("unknown"));
+        assertEquals(3, vote.totalVotes());
+    }
+
+    @Test
+    void testVoteForUnknownOptionIsRejected() {
+        assertFalse(vote.vote("unknown", "user"));
+        assertFalse(vote.vote(5, "user"));
+        assertFalse(vote.hasVoted("user"));
+    }
+
+    @Test
+    void testBallotsSnapshot() {
+        vote.vote("option1", "a");
+        vote.vote("option2", "b");
+        vote.vote("option1", "c");
+
+        Ballots ballots = vote.ballots();
+        vote.vote("option2", "d");
+
+        int first = vote.optionNames().indexOf("option1");
+        int second = vote.optionNames().indexOf("option2");
+        assertEquals(3, ballots.total());
+        assertEquals(2, ballots.count(first));
+        assertEquals(1, ballots.count(second));
+        assertEquals(UserRegistry.idOf("b"), ballots.voter(second, 0));
+    }
+
+    @Test
+    void testBallotsFrozenWhileVotingContinues() {
+        for (int i = 0; i < 3; i++) {
+            vote.vote("option1", "frozen" + i);
+        }
+        Ballots frozen = vote.ballots();
+        for (int i = 0; i < 100; i++) {
+            vote.vote("option2", "later" + i);
+        }
+
+        int second = vote.optionNames().indexOf("option2");
+        assertEquals(3, frozen.total());
+        assertEquals(0, frozen.count(second));
+        assertEquals(103, vote.totalVotes());
+        assertEquals(100, vote.ballots().count(second));
+    }
 }